@@ -0,0 +1,111 @@
+package benchmarks;
+
+import database.card.Card;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ Generates card databases with the same shape as a real carddb.json, for benchmarking. Output is deterministic for a
+ given card count and seed.
+
+ Usage: SyntheticCardDatabase [card count] [output file]
+ */
+public class SyntheticCardDatabase {
+	private SyntheticCardDatabase() {}
+
+	public static final long DEFAULT_SEED = 0x5EED;
+
+	private static final String[] ARCHETYPES = {"Alien", "Crim", "Cult", "Colony", "Robot"};
+	private static final String[] TYPES = {"Unit", "Unit - Beast", "Spell", "Equipment", "Structure", "Token Unit"};
+	private static final String[] RARITIES = {"C", "C", "C", "C", "U", "U", "R"};
+	private static final String[] PACKS = {"Core Set", "Expansion One", "Expansion Two"};
+	private static final String[] KEYWORDS = {"Flying", "Guard", "Haste", "Stealth", "Overload", "Regenerate", "Pierce", "Echo"};
+	private static final String[] WORDS = {"deal", "damage", "to", "target", "unit", "draw", "a", "card", "when", "this",
+			"dies", "gain", "health", "each", "opponent", "discards", "your", "hand", "channel", "charge", "destroy", "slot"};
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		File output = new File(args.length > 1 ? args[1] : "carddb.json");
+		write(output, count, DEFAULT_SEED);
+		System.out.println("Wrote " + count + " cards to " + output.getAbsolutePath());
+	}
+
+	private static JSONObject generateCard(int id, Random rng) {
+		JSONObject card = new JSONObject();
+		card.put("Name", "Synthetic Card " + id);
+		String type = TYPES[rng.nextInt(TYPES.length)];
+		card.put("Type", type);
+		card.put("Archetype", ARCHETYPES[rng.nextInt(ARCHETYPES.length)]);
+		card.put("Cost", rng.nextInt(10));
+		if (type.contains("Unit")) {
+			card.put("Power", rng.nextInt(8));
+			card.put("Health", 1 + rng.nextInt(8));
+		} else if (type.equals("Equipment")) {
+			card.put("Charges", 1 + rng.nextInt(4));
+			card.put("Slots", (1 + rng.nextInt(3)) + " Slots");
+		} else if (type.equals("Spell") && rng.nextBoolean()) {
+			card.put("Channel", rng.nextInt(4));
+		}
+
+		int words = rng.nextInt(40);
+		StringBuilder text = new StringBuilder(words * 8);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				text.append(' ');
+			}
+			text.append(WORDS[rng.nextInt(WORDS.length)]);
+		}
+		if (words > 0) {
+			card.put("Text", text.toString());
+		}
+
+		if (words == 0 || rng.nextInt(4) == 0) {
+			JSONArray keywords = new JSONArray();
+			int keywordCount = 1 + rng.nextInt(3);
+			for (int i = 0; i < keywordCount; i++) {
+				keywords.put(KEYWORDS[rng.nextInt(KEYWORDS.length)]);
+			}
+			card.put("Keywords", keywords);
+		}
+
+		card.put("ImageName", "synthetic" + (id % 50) + ".png");
+		card.put("Rarity", RARITIES[rng.nextInt(RARITIES.length)]);
+		card.put("Pack", PACKS[rng.nextInt(PACKS.length)]);
+		return card;
+	}
+
+	public static JSONArray generate(int count, long seed) {
+		Random rng = new Random(seed);
+		JSONArray cards = new JSONArray();
+		for (int id = 0; id < count; id++) {
+			cards.put(generateCard(id, rng));
+		}
+		return cards;
+	}
+
+	public static void write(File output, int count, long seed) throws IOException {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+			writer.write(generate(count, seed).toString(1));
+		}
+	}
+
+	/**
+	 Builds Card objects directly, without going through CardDatabase.
+	 @param count The number of cards to generate.
+	 @return The generated cards, with ids matching their index.
+	 */
+	public static List<Card> cards(int count) {
+		JSONArray json = generate(count, DEFAULT_SEED);
+		List<Card> cards = new ArrayList<>(count);
+		for (int id = 0; id < count; id++) {
+			cards.add(new Card(json.getJSONObject(id), id));
+		}
+		return cards;
+	}
+}
@@ -0,0 +1,57 @@
+package database.card;
+
+import benchmarks.SyntheticCardDatabase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures loading a card database, both parsing the JSON and reading back the snapshot written after the first load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dtinylog.level=off"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CardDatabaseLoadBenchmark {
+	@Param({"300", "3000", "30000"})
+	public int cardCount;
+
+	private File database;
+	private File snapshot;
+
+	@Setup
+	public void generateDatabase() throws IOException {
+		database = File.createTempFile("carddb", ".json");
+		database.deleteOnExit();
+		SyntheticCardDatabase.write(database, cardCount, SyntheticCardDatabase.DEFAULT_SEED);
+		snapshot = CardSnapshot.getFile(database);
+		snapshot.deleteOnExit();
+		//The first load writes the snapshot that loadSnapshot reads back.
+		new CardDatabase.CardDatabaseInstance(database);
+	}
+
+	@TearDown
+	public void deleteDatabase() {
+		for (File file : new File[] {database, snapshot}) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	/** Reading and parsing the JSON, without the snapshot. */
+	@Benchmark
+	public Object parseJson() throws IOException {
+		return CardLoader.load(CardLoader.read(database));
+	}
+
+	/** A full load that finds an up to date snapshot. */
+	@Benchmark
+	public Object loadSnapshot() throws IOException {
+		return new CardDatabase.CardDatabaseInstance(database);
+	}
+}
@@ -0,0 +1,121 @@
+package database.card;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures card count lookups and updates on a deck bounded by a trunk, and on an unbounded trunk. The reference
+ benchmarks do the same lookups and updates on a boxed HashMap, as a baseline for the primitive table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dtinylog.level=off"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DeckBenchmark {
+	private static final int ID_MASK = 4095;
+
+	@Param({"deck", "trunk"})
+	public String collection;
+
+	@Param({"300", "30000"})
+	public int cardCount;
+
+	private Deck deck;
+	private final Map<Integer, Integer> reference = new HashMap<>();
+	private final int[] ids = new int[ID_MASK + 1];
+	private int cursor = 0;
+
+	@Setup(Level.Iteration)
+	public void fillCollections() {
+		Deck trunk = new Deck(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		if (collection.equals("deck")) {
+			for (int id = 0; id < cardCount; id++) {
+				trunk.setCopies(id, 4);
+			}
+			deck = new Deck(4, 40, trunk);
+		} else {
+			deck = trunk;
+		}
+
+		reference.clear();
+		for (int id = 0; id < cardCount; id++) {
+			reference.put(id, deck.getCopies(id));
+		}
+
+		Random rng = new Random(cardCount);
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = rng.nextInt(cardCount);
+		}
+	}
+
+	private int nextId() {
+		return ids[cursor++ & ID_MASK];
+	}
+
+	@Benchmark
+	public int getCopies() {
+		return deck.getCopies(nextId());
+	}
+
+	@Benchmark
+	public CardCount setCopies() {
+		int id = nextId();
+		return deck.setCopies(id, (deck.getCopies(id) + 1) % 5);
+	}
+
+	/** Three lookups per update, roughly what browsing the table while editing a deck looks like. */
+	@Benchmark
+	@OperationsPerInvocation(4)
+	public CardCount mixed() {
+		int copies = deck.getCopies(nextId()) + deck.getCopies(nextId()) + deck.getCopies(nextId());
+		int id = nextId();
+		CardCount result = deck.setCopies(id, (deck.getCopies(id) + copies) % 5);
+		return copies > 100 ? CardCount.INVALID : result;
+	}
+
+	/** Removes a card then puts it back, which goes through the backward shift on every removal. */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public CardCount removeAndRestore() {
+		int id = nextId();
+		int copies = deck.getCopies(id);
+		deck.setCopies(id, 0);
+		return deck.setCopies(id, copies);
+	}
+
+	@Benchmark
+	public int referenceGetCopies() {
+		return reference.getOrDefault(nextId(), 0);
+	}
+
+	@Benchmark
+	public Integer referenceSetCopies() {
+		int id = nextId();
+		return reference.put(id, (reference.getOrDefault(id, 0) + 1) % 5);
+	}
+
+	@Benchmark
+	public int fillAndClear() {
+		for (int id = 0; id < cardCount; id++) {
+			deck.setCopies(id, 1);
+		}
+		int size = deck.getSize();
+		deck.clear();
+		return size;
+	}
+
+	/** The same fill as fillAndClear, done in one sweep the way filling the trunk does it. */
+	@Benchmark
+	public int fillAllAndClear() {
+		deck.fillAll(cardCount, 1);
+		int size = deck.getSize();
+		deck.clear();
+		return size;
+	}
+}
@@ -0,0 +1,262 @@
+package database.card;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ Randomized check of Deck against a HashMap reference. Each seed runs a random mix of setCopies, removals, clear(),
+ fillAll and addMany over ids drawn either from a small dense range or spread far apart, with and without limits on the
+ collection, and compares every count, the size and the member set along the way.
+
+ Between them the seeds have to cover table resizes, switching to and from the dense array and the generation counter
+ wrapping on clear(), while collections the size of a deck have to stay in the table. Backward shift deletion is
+ covered by looking up every card in the reference after removals, since a bad shift leaves entries the probe can't
+ reach. Exits with 1 if anything differs or a case wasn't covered.
+
+ Usage: DeckPropertyCheck [seeds] [operations per seed]
+ */
+public class DeckPropertyCheck {
+	private static final int[][] LIMITS = {
+			{Integer.MAX_VALUE, Integer.MAX_VALUE},
+			{4, 40},
+			{3, 500}
+	};
+
+	private final Random random;
+	private final Deck deck;
+	private final int maxCopies;
+	private final int maxSize;
+	private final Map<Integer, Integer> reference = new HashMap<>();
+	private int referenceSize = 0;
+	private final boolean sparse;
+	private final String seedName;
+
+	private static int resizes = 0;
+	private static int denseSwitches = 0;
+	private static int tableSwitches = 0;
+	private static int generationWraps = 0;
+
+	private DeckPropertyCheck(long seed) {
+		random = new Random(seed);
+		int[] limits = LIMITS[random.nextInt(LIMITS.length)];
+		maxCopies = limits[0];
+		maxSize = limits[1];
+		deck = new Deck(maxCopies, maxSize);
+		sparse = random.nextBoolean();
+		seedName = "seed " + seed + " (max copies " + maxCopies + ", max size " + maxSize + (sparse ? ", sparse ids)" : ", dense ids)");
+	}
+
+	public static void main(String[] args) throws ReflectiveOperationException {
+		int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		for (long seed = 0; seed < seeds; seed++) {
+			new DeckPropertyCheck(seed).run(operations);
+		}
+		checkGenerationWrap();
+
+		System.out.printf("%d seeds passed: %d resizes, %d switches to the array, %d back to the table, %d generation wraps.%n",
+				seeds, resizes, denseSwitches, tableSwitches, generationWraps);
+		if (resizes == 0 || denseSwitches == 0 || tableSwitches == 0 || generationWraps == 0) {
+			fail("not every case was covered, run more seeds or operations.");
+		}
+	}
+
+	private int nextId() {
+		if (sparse && random.nextInt(4) == 0) {
+			return random.nextInt(1_000_000);
+		}
+		return random.nextInt(sparse ? 5000 : 600);
+	}
+
+	private int nextCount() {
+		int limit = Integer.min(maxCopies, 6);
+		return random.nextInt(limit + 2) - (random.nextInt(8) == 0 ? 1 : 0);
+	}
+
+	private void run(int operations) throws ReflectiveOperationException {
+		for (int op = 0; op < operations; op++) {
+			boolean wasDense = isDense(deck);
+			int capacity = getInt(deck, "capacity");
+			int roll = random.nextInt(1000);
+			if (roll < 550) {
+				int cardId = nextId();
+				int count = nextCount();
+				check(deck.setCopies(cardId, count) == referenceSet(cardId, count), "setCopies(" + cardId + ", " + count + ") result");
+				check(deck.getCopies(cardId) == copies(cardId), "count of #" + cardId + " after setCopies");
+			} else if (roll < 900) {
+				//Remove a card that's actually there, to exercise deletion rather than misses.
+				int cardId = reference.isEmpty() ? nextId() : pick(reference.keySet());
+				check(deck.setCopies(cardId, 0) == referenceSet(cardId, 0), "removing #" + cardId + " result");
+				checkAll("removing #" + cardId);
+			} else if (roll < 930) {
+				int[] ids = new int[random.nextInt(40)];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = nextId();
+				}
+				check(deck.addMany(ids) == referenceAddMany(ids), "addMany result");
+			} else if (roll < 960) {
+				int cardCount = random.nextInt(sparse ? 2000 : 800);
+				int copies = nextCount();
+				deck.fillAll(cardCount, copies);
+				referenceFillAll(cardCount, copies);
+				checkAll("fillAll(" + cardCount + ", " + copies + ")");
+			} else if (roll < 975) {
+				deck.clear();
+				reference.clear();
+				referenceSize = 0;
+				checkAll("clear()");
+			} else {
+				checkAll("operation " + op);
+			}
+
+			boolean isDense = isDense(deck);
+			check(!isDense || maxSize > 64, "switch to the array for a collection of at most " + maxSize + " cards");
+			if (isDense && !wasDense) {
+				denseSwitches++;
+			} else if (!isDense && wasDense && !reference.isEmpty()) {
+				tableSwitches++;
+			} else if (!isDense && getInt(deck, "capacity") > capacity) {
+				resizes++;
+			}
+		}
+		checkAll("the last operation");
+	}
+
+	/**
+	 Mirrors Deck.setCopies.
+	 */
+	private CardCount referenceSet(int cardId, int count) {
+		int current = copies(cardId);
+		int nextSize = referenceSize + count - current;
+		if (nextSize < 0 || nextSize > maxSize) {
+			return CardCount.INVALID;
+		}
+		if (count > 0 && count <= maxCopies) {
+			put(cardId, count, nextSize);
+			return CardCount.SOME;
+		} else if (count == maxCopies) {
+			put(cardId, count, nextSize);
+			return CardCount.MAX;
+		} else if (count <= 0) {
+			put(cardId, 0, nextSize);
+			return CardCount.NONE;
+		}
+		return CardCount.INVALID;
+	}
+
+	/**
+	 Mirrors Deck.fillAll, which is setCopies for each card in id order, skipping any that don't fit.
+	 */
+	private void referenceFillAll(int cardCount, int copies) {
+		int target = Integer.max(copies, 0);
+		for (int cardId = 0; cardId < cardCount; cardId++) {
+			long nextSize = (long) referenceSize + target - copies(cardId);
+			if (target <= maxCopies && nextSize <= maxSize) {
+				put(cardId, target, (int) nextSize);
+			}
+		}
+	}
+
+	/**
+	 Mirrors Deck.addMany.
+	 */
+	private int referenceAddMany(int[] cardIds) {
+		for (int i = 0; i < cardIds.length; i++) {
+			int copies = copies(cardIds[i]) + 1;
+			if (referenceSize == maxSize || copies > maxCopies) {
+				return i;
+			}
+			put(cardIds[i], copies, referenceSize + 1);
+		}
+		return cardIds.length;
+	}
+
+	private void put(int cardId, int count, int nextSize) {
+		if (count > 0) {
+			reference.put(cardId, count);
+		} else {
+			reference.remove(cardId);
+		}
+		referenceSize = nextSize;
+	}
+
+	private int copies(int cardId) {
+		return reference.getOrDefault(cardId, 0);
+	}
+
+	private int pick(Set<Integer> ids) {
+		int skip = random.nextInt(ids.size());
+		Iterator<Integer> iterator = ids.iterator();
+		while (skip-- > 0) {
+			iterator.next();
+		}
+		return iterator.next();
+	}
+
+	private void checkAll(String after) {
+		check(deck.getSize() == referenceSize, "size after " + after);
+		BitSet members = new BitSet();
+		for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+			members.set(entry.getKey());
+			check(deck.getCopies(entry.getKey()) == entry.getValue(), "count of #" + entry.getKey() + " after " + after);
+		}
+		check(deck.getMembers().equals(members), "members after " + after);
+		for (int i = 0; i < 50; i++) {
+			int cardId = nextId();
+			check(deck.getCopies(cardId) == copies(cardId), "count of #" + cardId + " after " + after);
+		}
+	}
+
+	private void check(boolean passed, String what) {
+		if (!passed) {
+			fail(seedName + ": wrong " + what + ".");
+		}
+	}
+
+	/**
+	 Pushes a table's generation counter up to its limit, then clears it past the wrap, which has to wipe the stamps
+	 instead of leaving old entries looking current.
+	 */
+	private static void checkGenerationWrap() throws ReflectiveOperationException {
+		Deck deck = new Deck(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		Field generation = Deck.class.getDeclaredField("generation");
+		generation.setAccessible(true);
+		generation.setInt(deck, Integer.MAX_VALUE - 2);
+		for (int round = 0; round < 5; round++) {
+			for (int cardId = 0; cardId < 20; cardId++) {
+				deck.setCopies(cardId * 7919, round + 1);
+			}
+			int before = generation.getInt(deck);
+			deck.clear();
+			if (generation.getInt(deck) < before) {
+				generationWraps++;
+			}
+			for (int cardId = 0; cardId < 20; cardId++) {
+				if (deck.getCopies(cardId * 7919) != 0) {
+					fail("card #" + cardId * 7919 + " survived clear() in round " + round + " of the generation wrap check.");
+				}
+			}
+			if (deck.getSize() != 0 || !deck.getMembers().isEmpty()) {
+				fail("deck not empty after clear() in round " + round + " of the generation wrap check.");
+			}
+		}
+	}
+
+	private static boolean isDense(Deck deck) throws ReflectiveOperationException {
+		Field dense = Deck.class.getDeclaredField("dense");
+		dense.setAccessible(true);
+		return dense.get(deck) != null;
+	}
+
+	private static int getInt(Deck deck, String name) throws ReflectiveOperationException {
+		Field field = Deck.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.getInt(deck);
+	}
+
+	@SuppressWarnings("UseOfSystemOutOrSystemErr")
+	private static void fail(String message) {
+		System.err.println("Deck check failed: " + message);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,178 @@
+package database.image;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineByte;
+import ar.com.hjg.pngj.ImageLineInt;
+import benchmarks.SyntheticCardDatabase;
+import database.card.Card;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures deck sheet export. writeDeckImageCold empties the memory and disk caches before every export, so it covers
+ rendering every card and encoding the sheet, while writeDeckImageWarm only measures encoding a sheet of cached cards.
+ The disk cache is pointed at a temp directory, so the real one is left alone. rowAssembly and legacyRowAssembly
+ compare building scanlines from the card byte arrays against the old per-element DataBuffer reads into an
+ ImageLineInt, in rows per second.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dtinylog.level=off"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DeckImageBenchmark {
+	private static final int DECK_SIZE_X = ImgConstants.CARD_SIZE_X * ImgStore.DECK_COUNT_X;
+	//Set before RenderCache is first used, which reads the directory once.
+	private static final File renderCacheDir = createRenderCacheDir();
+
+	@Param({"40", "140"})
+	public int deckSize;
+
+	private List<Card> deck;
+	private File outputDir;
+	private ImageInfo imageInfo;
+	private BufferedImage[] rowImages;
+	private byte[][] rowBuffers;
+	private DataBuffer[] rowDataBuffers;
+	private ImageLineByte byteLine;
+	private ImageLineInt intLine;
+
+	@Setup
+	public void createDeck() throws IOException {
+		List<Card> cards = SyntheticCardDatabase.cards(deckSize / 4);
+		deck = new ArrayList<>(deckSize);
+		for (Card card : cards) {
+			for (int copy = 0; copy < 4; copy++) {
+				deck.add(card);
+			}
+		}
+
+		outputDir = File.createTempFile("deckimage", "");
+		if (!outputDir.delete() || !outputDir.mkdir()) {
+			throw new IOException("Unable to create " + outputDir.getAbsolutePath());
+		}
+
+		Random rng = new Random(deckSize);
+		imageInfo = new ImageInfo(DECK_SIZE_X, ImgConstants.CARD_SIZE_Y, 8, false);
+		rowImages = new BufferedImage[ImgStore.DECK_COUNT_X];
+		rowBuffers = new byte[ImgStore.DECK_COUNT_X][];
+		rowDataBuffers = new DataBuffer[ImgStore.DECK_COUNT_X];
+		for (int i = 0; i < rowImages.length; i++) {
+			rowImages[i] = new BufferedImage(ImgConstants.CARD_SIZE_X, ImgConstants.CARD_SIZE_Y, BufferedImage.TYPE_3BYTE_BGR);
+			rowBuffers[i] = ((DataBufferByte) rowImages[i].getRaster().getDataBuffer()).getData();
+			rng.nextBytes(rowBuffers[i]);
+			rowDataBuffers[i] = rowImages[i].getRaster().getDataBuffer();
+		}
+		byteLine = new ImageLineByte(imageInfo);
+		intLine = new ImageLineInt(imageInfo);
+	}
+
+	/**
+	 Empties every cache a card image can come from before each export.
+	 */
+	@State(Scope.Benchmark)
+	public static class ColdCaches {
+		@Setup(Level.Invocation)
+		public void clear() throws InterruptedException {
+			ImgStore.clearCardImageCache();
+			RenderCache.clear();
+		}
+	}
+
+	/**
+	 Renders the deck once up front, so every card comes from the memory cache.
+	 */
+	@State(Scope.Benchmark)
+	public static class WarmCaches {
+		@Setup
+		public void fill(DeckImageBenchmark benchmark) {
+			ImgStore.writeDeckImage(benchmark.deck, new File(benchmark.outputDir, "deck.png"));
+		}
+	}
+
+	private static File createRenderCacheDir() {
+		try {
+			File directory = Files.createTempDirectory("rendercache").toFile();
+			System.setProperty("cardgenerator.renderCacheDir", directory.getAbsolutePath());
+			return directory;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@TearDown
+	public void deleteOutput() throws InterruptedException {
+		RenderCache.clear();
+		delete(outputDir);
+		delete(renderCacheDir);
+	}
+
+	private static void delete(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.deleteOnExit();
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void writeDeckImageCold(ColdCaches caches) {
+		ImgStore.writeDeckImage(deck, new File(outputDir, "deck.png"));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void writeDeckImageWarm(WarmCaches caches) {
+		ImgStore.writeDeckImage(deck, new File(outputDir, "deck.png"));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(ImgConstants.CARD_SIZE_Y)
+	public byte[] rowAssembly() {
+		byte[] scanline = byteLine.getScanline();
+		for (int y = 0; y < ImgConstants.CARD_SIZE_Y; y++) {
+			ImgStore.copyRow(rowBuffers, y, scanline);
+		}
+		return scanline;
+	}
+
+	/** The row assembly loop writeDeckImage used before it read the byte arrays directly. */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(ImgConstants.CARD_SIZE_Y)
+	public int[] legacyRowAssembly() {
+		int[] scanline = intLine.getScanline();
+		for (int y = 0; y < ImgConstants.CARD_SIZE_Y; y++) {
+			for (int cardX = 0; cardX < ImgStore.DECK_COUNT_X; cardX++) {
+				DataBuffer cardBuffer = rowDataBuffers[cardX];
+				for (int x = 0; x < ImgConstants.CARD_SIZE_X; x++) {
+					int outIndex = 3 * (x + cardX * ImgConstants.CARD_SIZE_X);
+					int cardIndex = 3 * (x + (y * ImgConstants.CARD_SIZE_X));
+					scanline[outIndex] = cardBuffer.getElem(cardIndex + 2);
+					scanline[outIndex + 1] = cardBuffer.getElem(cardIndex + 1);
+					scanline[outIndex + 2] = cardBuffer.getElem(cardIndex);
+				}
+			}
+		}
+		return scanline;
+	}
+}
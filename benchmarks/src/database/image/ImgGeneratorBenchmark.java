@@ -0,0 +1,35 @@
+package database.image;
+
+import benchmarks.SyntheticCardDatabase;
+import database.card.Card;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures generating a card face from scratch. The synthetic cards have no art files, so this covers frame compositing
+ and text layout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dtinylog.level=off"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImgGeneratorBenchmark {
+	private List<Card> cards;
+	private int cursor = 0;
+
+	@Setup
+	public void createCards() {
+		cards = SyntheticCardDatabase.cards(64);
+		ImgGenerator.preloadResources();
+	}
+
+	@Benchmark
+	public BufferedImage generateImage() throws InterruptedException {
+		return ImgGenerator.generateImage(cards.get(cursor++ & 63));
+	}
+}
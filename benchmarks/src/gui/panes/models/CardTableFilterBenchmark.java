@@ -0,0 +1,149 @@
+package gui.panes.models;
+
+import benchmarks.SyntheticCardDatabase;
+import database.card.Archetype;
+import database.card.Card;
+import database.card.CardIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ Measures evaluating each kind of search predicate over every card in a database. The indexed benchmarks pick out the
+ same cards for the filters that can be answered from the card index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dtinylog.level=off"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CardTableFilterBenchmark {
+	@Param({"300", "30000"})
+	public int cardCount;
+
+	private List<Card> cards;
+	private CardIndex index;
+	private Predicate<Card> archetypeFilter;
+	private Predicate<Card> nameFilter;
+	private Predicate<Card> nameRegexFilter;
+	private Predicate<Card> typeFilter;
+	private Predicate<Card> keywordFilter;
+	private Predicate<Card> textFilter;
+	//The same search, as separate filters tested in the order the filter pane adds them, and as one compiled query.
+	private List<Predicate<Card>> searchFilters;
+	private CardQuery compiledSearch;
+
+	@Setup
+	public void createFilters() {
+		cards = SyntheticCardDatabase.cards(cardCount);
+		index = new CardIndex(cards);
+		archetypeFilter = CardTableFilter.createArchetypeFilter(EnumSet.of(Archetype.ALIEN, Archetype.ROBOT));
+		nameFilter = CardTableFilter.createNameFilter("card 12");
+		nameRegexFilter = CardTableFilter.createNameFilter("REGEX:card 1[0-9]+5$");
+		typeFilter = CardTableFilter.createTypeFilter("unit");
+		keywordFilter = CardTableFilter.createKeywordFilter("fly+guard,haste");
+		textFilter = CardTableFilter.createTextFilter("draw a card");
+		searchFilters = Arrays.asList(
+				CardTableFilter.createNameFilter("REGEX:card [0-9]+5$"),
+				CardTableFilter.createKeywordFilter("fly,guard"),
+				CardTableFilter.createArchetypeFilter(EnumSet.of(Archetype.ALIEN, Archetype.ROBOT)));
+		compiledSearch = CardQuery.compile("archetype:ALIEN,ROBOT\nname:REGEX:card [0-9]+5$\nkeywords:fly,guard\ncost<=3");
+	}
+
+	private int count(Predicate<Card> filter) {
+		int matches = 0;
+		for (Card card : cards) {
+			if (filter.test(card)) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int archetype() {
+		return count(archetypeFilter);
+	}
+
+	@Benchmark
+	public int archetypeIndexed() {
+		return ((CardTableFilter.IndexedFilter) archetypeFilter).select(index).cardinality();
+	}
+
+	/** The archetype and type filters together, combined a word at a time. */
+	@Benchmark
+	public int archetypeAndTypeIndexed() {
+		BitSet matches = ((CardTableFilter.IndexedFilter) archetypeFilter).select(index);
+		matches.and(((CardTableFilter.IndexedFilter) typeFilter).select(index));
+		return matches.cardinality();
+	}
+
+	@Benchmark
+	public int name() {
+		return count(nameFilter);
+	}
+
+	@Benchmark
+	public int nameRegex() {
+		return count(nameRegexFilter);
+	}
+
+	@Benchmark
+	public int type() {
+		return count(typeFilter);
+	}
+
+	@Benchmark
+	public int typeIndexed() {
+		return ((CardTableFilter.IndexedFilter) typeFilter).select(index).cardinality();
+	}
+
+	@Benchmark
+	public int keyword() {
+		return count(keywordFilter);
+	}
+
+	@Benchmark
+	public int searchFilters() {
+		int matches = 0;
+		for (Card card : cards) {
+			boolean passed = card.cost <= 3;
+			for (int i = 0; passed && i < searchFilters.size(); i++) {
+				passed = searchFilters.get(i).test(card);
+			}
+			if (passed) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int compiledSearch() {
+		return count(compiledSearch);
+	}
+
+	@Benchmark
+	public int compiledSearchIndexed() {
+		BitSet candidates = compiledSearch.select(index);
+		Predicate<Card> remainder = compiledSearch.getRemainder();
+		int matches = 0;
+		for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+			if (remainder.test(cards.get(id))) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int text() {
+		return count(textFilter);
+	}
+}
@@ -0,0 +1,271 @@
+package application;
+
+import database.card.Card;
+import database.card.CardDatabase;
+import database.image.ImgStore;
+import org.tinylog.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ Renders cards to individual pngs without starting the GUI, so card images can be regenerated on machines without a
+ display. Cards whose image is already up to date in the output directory are skipped, which is tracked with a manifest
+ of card fingerprints kept next to the images.
+
+ Exits with 0 if every card was rendered or skipped, 1 if any card failed and 2 if nothing could be rendered at all.
+ */
+public class BatchRenderer {
+	private static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: BatchRenderer [options]",
+			"  --db <file>        Card database to read. Defaults to carddb.json.",
+			"  --out <dir>        Directory to write card images to. Defaults to renders.",
+			"  --filter <regex>   Only render cards with a name matching the regex.",
+			"  --pack <name>      Only render cards from the given pack.",
+			"  --threads <count>  Number of cards to render at once. Defaults to the number of cores.",
+			"  --force            Render the selected cards even if they are up to date.");
+	private static final String MANIFEST_NAME = ".manifest";
+	private static final int EXIT_FAILED_CARDS = 1;
+	private static final int EXIT_FAILED = 2;
+
+	private BatchRenderer() {}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		LTags.configureLogging();
+		System.exit(run(args));
+	}
+
+	//Output here is the whole point of this class, so it goes to the console rather than the logger.
+	@SuppressWarnings("UseOfSystemOutOrSystemErr")
+	private static int run(String[] args) {
+		File databaseFile = new File("carddb.json");
+		File outputDir = new File("renders");
+		Pattern filter = null;
+		String pack = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean force = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "--db":
+						databaseFile = new File(args[++i]);
+						break;
+					case "--out":
+						outputDir = new File(args[++i]);
+						break;
+					case "--filter":
+						filter = Pattern.compile(args[++i]);
+						break;
+					case "--pack":
+						pack = args[++i];
+						break;
+					case "--threads":
+						threads = Integer.parseInt(args[++i]);
+						break;
+					case "--force":
+						force = true;
+						break;
+					default:
+						System.err.println("Unknown option " + args[i]);
+						System.err.println(USAGE);
+						return EXIT_FAILED;
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException | PatternSyntaxException e) {
+			System.err.println("Invalid arguments: " + e.getMessage());
+			System.err.println(USAGE);
+			return EXIT_FAILED;
+		}
+
+		List<Card> cards;
+		try {
+			cards = CardDatabase.readCards(databaseFile);
+		} catch (IOException e) {
+			System.err.println("Unable to read " + databaseFile + ": " + e.getMessage());
+			return EXIT_FAILED;
+		}
+
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			System.err.println("Unable to create " + outputDir.getAbsolutePath());
+			return EXIT_FAILED;
+		}
+
+		List<Card> selected = new ArrayList<>(cards.size());
+		for (Card card : cards) {
+			if ((filter == null || filter.matcher(card.name).find()) && (pack == null || pack.equals(card.pack))) {
+				selected.add(card);
+			}
+		}
+		System.out.println("Rendering " + selected.size() + " of " + cards.size() + " cards to " + outputDir.getAbsolutePath());
+
+		File manifestFile = new File(outputDir, MANIFEST_NAME);
+		//Always start from the existing manifest, so forcing a re-render of some cards keeps the entries for the rest.
+		Map<String, String> manifest = readManifest(manifestFile);
+		int failures = render(selected, getFileNames(cards), outputDir, manifest, Integer.max(1, threads), force);
+		pruneManifest(outputDir, manifest);
+		writeManifest(manifestFile, manifest);
+
+		if (failures > 0) {
+			System.err.println(failures + " cards failed to render.");
+			return EXIT_FAILED_CARDS;
+		}
+		return 0;
+	}
+
+	/**
+	 Renders the cards on a pool of workers, skipping any that the manifest says are already up to date.
+	 @param fileNames The file to write each card to.
+	 @param force     Whether to render cards even if they're up to date.
+	 @return The number of cards that failed to render.
+	 */
+	@SuppressWarnings("UseOfSystemOutOrSystemErr")
+	private static int render(List<Card> cards, Map<Card, String> fileNames, File outputDir, Map<String, String> manifest, int threads, boolean force) {
+		Map<String, Card> outputs = new LinkedHashMap<>(cards.size() * 2);
+		for (Card card : cards) {
+			outputs.put(fileNames.get(card), card);
+		}
+
+		ImgStore.preloadCardResources();
+		ExecutorService renderPool = Executors.newFixedThreadPool(threads);
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicInteger skipped = new AtomicInteger(0);
+		AtomicInteger failed = new AtomicInteger(0);
+		long start = System.nanoTime();
+		for (Map.Entry<String, Card> output : outputs.entrySet()) {
+			renderPool.submit(() -> {
+				Card card = output.getValue();
+				File file = new File(outputDir, output.getKey());
+				String status;
+				try {
+					String fingerprint = ImgStore.getCardFingerprint(card);
+					if (!force && fingerprint.equals(manifest.get(output.getKey())) && file.isFile()) {
+						skipped.incrementAndGet();
+						status = "Up to date";
+					} else {
+						//Drop the entry first, so a failed render is never mistaken for an up to date one.
+						manifest.remove(output.getKey());
+						ImgStore.writeCardImage(card, file);
+						manifest.put(output.getKey(), fingerprint);
+						status = "Rendered";
+					}
+				} catch (Exception e) {
+					failed.incrementAndGet();
+					status = "FAILED (" + e + ")";
+				}
+				System.out.printf("[%d/%d] %s %s -> %s%n", done.incrementAndGet(), outputs.size(), status, card.name, output.getKey());
+			});
+		}
+
+		renderPool.shutdown();
+		try {
+			while (!renderPool.awaitTermination(1, TimeUnit.MINUTES)) {
+				System.out.println(done.get() + " of " + outputs.size() + " cards done.");
+			}
+		} catch (InterruptedException e) {
+			renderPool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return outputs.size() - done.get() + failed.get();
+		}
+
+		System.out.printf("Done in %.1fs: %d rendered, %d up to date, %d failed.%n", (System.nanoTime() - start) / 1e9,
+				done.get() - skipped.get() - failed.get(), skipped.get(), failed.get());
+		return failed.get();
+	}
+
+	/**
+	 Picks a file for every card. Cards whose names come out the same once they're made safe for a filename, ignoring
+	 case since Windows and macOS do, get their id added so they don't overwrite each other. Names are picked over the
+	 whole database rather than just the selected cards, so a card always renders to the same file.
+	 @param cards Every card in the database.
+	 @return The file name for each card.
+	 */
+	private static Map<Card, String> getFileNames(List<Card> cards) {
+		Map<String, Integer> nameCounts = new HashMap<>(cards.size() * 2);
+		for (Card card : cards) {
+			nameCounts.merge(getBaseName(card).toLowerCase(Locale.ROOT), 1, Integer::sum);
+		}
+
+		Map<Card, String> fileNames = new HashMap<>(cards.size() * 2);
+		Set<String> used = new HashSet<>(cards.size() * 2);
+		for (Card card : cards) {
+			String name = getBaseName(card);
+			if (nameCounts.get(name.toLowerCase(Locale.ROOT)) == 1) {
+				fileNames.put(card, name + ".png");
+				used.add(name.toLowerCase(Locale.ROOT));
+			}
+		}
+		//Another card can already be named like a name with an id added, so keep adding it until the name is free.
+		for (Card card : cards) {
+			if (!fileNames.containsKey(card)) {
+				String name = getBaseName(card) + "_" + card.id;
+				while (!used.add(name.toLowerCase(Locale.ROOT))) {
+					name += "_" + card.id;
+				}
+				fileNames.put(card, name + ".png");
+			}
+		}
+		return fileNames;
+	}
+
+	private static String getBaseName(Card card) {
+		return card.name.replaceAll("[^A-Za-z0-9._-]+", "_");
+	}
+
+	/**
+	 Reads the fingerprints of previously rendered cards. A missing or unreadable manifest just means everything gets
+	 rendered again.
+	 */
+	private static Map<String, String> readManifest(File file) {
+		Map<String, String> manifest = new ConcurrentHashMap<>();
+		if (!file.isFile()) {
+			return manifest;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int split = line.indexOf(' ');
+				if (split > 0) {
+					manifest.put(line.substring(split + 1), line.substring(0, split));
+				}
+			}
+		} catch (IOException e) {
+			Logger.tag(LTags.IMG_GEN.tag).warn(e, "Unable to read {}, rendering everything.", file.getAbsolutePath());
+			manifest.clear();
+		}
+		return manifest;
+	}
+
+	/**
+	 Drops entries for images that are no longer in the output directory, so the manifest doesn't grow forever as cards
+	 are renamed or removed.
+	 */
+	private static void pruneManifest(File outputDir, Map<String, String> manifest) {
+		manifest.keySet().removeIf((fileName) -> !new File(outputDir, fileName).isFile());
+	}
+
+	private static void writeManifest(File file, Map<String, String> manifest) {
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, String> entry : new TreeMap<>(manifest).entrySet()) {
+					writer.write(entry.getValue());
+					writer.write(' ');
+					writer.write(entry.getKey());
+					writer.newLine();
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Logger.tag(LTags.IMG_GEN.tag).error(e, "Unable to write {}.", file.getAbsolutePath());
+		}
+	}
+}
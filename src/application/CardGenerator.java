@@ -8,6 +8,7 @@ import java.io.File;
 public class CardGenerator {
 	public static void main(String[] args) {
 		LTags.configureLogging();
+		Runtime.getRuntime().addShutdownHook(new Thread(TaskScheduler::logMetrics));
 		Gui.init();
 		CardDatabase.initCardDatabase(new File("carddb.json"));
 	}
@@ -9,6 +9,7 @@ public enum LTags {
 	USER_INPUT("User Input", LogLevel.OFF),
 	UI_UPDATES("UI Updates", LogLevel.OFF),
 	UI_SYNC("UI Sync", LogLevel.OFF),
+	TASKS("Tasks", LogLevel.OFF),
 	DECK("Card Collection", LogLevel.TRACE);
 
 	private static final boolean WRITE_TO_FILE = !System.getProperty("java.class.path").contains("idea_rt.jar");
@@ -0,0 +1,202 @@
+package application;
+
+import org.tinylog.Logger;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Runs background work on separate lanes, so work of one kind never waits behind work of another. Each lane has its own
+ threads and a queue ordered by priority, then by when tasks were submitted. Cancelling a queued task drops it from the
+ queue straight away. Cancelling a running one interrupts it, and long tasks can check isCancelled() to stop early.
+ */
+public class TaskScheduler {
+	//Higher priorities run first within a lane.
+	public static final int PRIORITY_NORMAL = 0;
+
+	private static final AtomicLong sequence = new AtomicLong(0);
+	private static final ThreadLocal<Task<?>> currentTask = new ThreadLocal<>();
+	private static final Set<Task<?>> runningTasks = ConcurrentHashMap.newKeySet();
+
+	private TaskScheduler() {}
+
+	public enum Lane {
+		//Work the user is waiting on, like showing the selected card.
+		INTERACTIVE("Interactive Worker", 1, Thread.NORM_PRIORITY + 1),
+		//Changes to the cards, deck and trunk. Single threaded, so changes happen in the order they're asked for.
+		MUTATION("Card Database Worker", 1, Thread.NORM_PRIORITY),
+		//Working out which cards the card table shows, and in what order. Only the latest search is wanted, so older ones
+		//get cancelled rather than queueing up.
+		SEARCH("Search Worker", 1, Thread.NORM_PRIORITY),
+		//Long running jobs writing things out, like deck images.
+		EXPORT("Export Worker", 1, Thread.NORM_PRIORITY - 1),
+		//Speculative work that's only useful if it finishes before it's needed.
+		PREFETCH("Card Prefetcher", Integer.max(1, Runtime.getRuntime().availableProcessors() / 2), Thread.MIN_PRIORITY);
+
+		public final int threadPriority;
+		private final ThreadPoolExecutor executor;
+		private final AtomicInteger peakQueueDepth = new AtomicInteger(0);
+		private final AtomicLong cancelled = new AtomicLong(0);
+		private final AtomicLong longestWaitNanos = new AtomicLong(0);
+
+		Lane(String threadName, int threads, int threadPriority) {
+			this.threadPriority = threadPriority;
+			AtomicInteger count = new AtomicInteger(0);
+			executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), (r) -> {
+				Thread thread = new Thread(r, threadName + " " + count.getAndIncrement());
+				thread.setDaemon(true);
+				thread.setPriority(threadPriority);
+				return thread;
+			});
+		}
+
+		public int getQueueDepth() {
+			return executor.getQueue().size();
+		}
+
+		public int getPeakQueueDepth() {
+			return peakQueueDepth.get();
+		}
+
+		public int getRunningCount() {
+			return executor.getActiveCount();
+		}
+
+		public long getCompletedCount() {
+			return executor.getCompletedTaskCount();
+		}
+
+		public long getCancelledCount() {
+			return cancelled.get();
+		}
+
+		public long getLongestWaitMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(longestWaitNanos.get());
+		}
+
+		/**
+		 Cancels everything queued or running on this lane.
+		 */
+		public void cancelAll() {
+			for (Runnable queued : executor.getQueue().toArray(new Runnable[0])) {
+				((Task<?>) queued).cancel(false);
+			}
+			for (Task<?> running : runningTasks) {
+				if (running.lane == this) {
+					running.cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 A unit of work on a lane. Subclasses can override done() to find out when it finishes or is cancelled.
+	 @param <T> The result type.
+	 */
+	public static class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+		private final Lane lane;
+		private final int priority;
+		private final long order = sequence.getAndIncrement();
+		private long queuedAt;
+
+		public Task(Lane lane, int priority, Callable<T> work) {
+			super(work);
+			this.lane = lane;
+			this.priority = priority;
+		}
+
+		public Task(Lane lane, int priority, Runnable work) {
+			super(work, null);
+			this.lane = lane;
+			this.priority = priority;
+		}
+
+		@Override
+		public void run() {
+			long waited = System.nanoTime() - queuedAt;
+			lane.longestWaitNanos.accumulateAndGet(waited, Long::max);
+			Logger.tag(LTags.TASKS.tag).trace("{} task waited {}us, {} still queued.", lane, waited / 1000, lane.getQueueDepth());
+			currentTask.set(this);
+			runningTasks.add(this);
+			try {
+				super.run();
+			} finally {
+				runningTasks.remove(this);
+				currentTask.remove();
+				//Don't leak the interrupt from cancelling this task into whatever runs next on the thread.
+				Thread.interrupted();
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				lane.cancelled.incrementAndGet();
+				lane.executor.remove(this);
+			}
+			return cancelled;
+		}
+
+		/**
+		 Cancels the task only if it hasn't started yet.
+		 @return True if the task was taken out of the queue before it started.
+		 */
+		public boolean unqueue() {
+			return lane.executor.remove(this) && cancel(false);
+		}
+
+		@Override
+		public int compareTo(Task<?> other) {
+			if (priority != other.priority) {
+				return Integer.compare(other.priority, priority);
+			}
+			return Long.compare(order, other.order);
+		}
+	}
+
+	/**
+	 Queues up a task on its lane.
+	 @param task The task to run.
+	 @return The task, for chaining.
+	 */
+	public static <T> Task<T> submit(Task<T> task) {
+		Lane lane = task.lane;
+		task.queuedAt = System.nanoTime();
+		lane.executor.execute(task);
+		int depth = lane.getQueueDepth();
+		lane.peakQueueDepth.accumulateAndGet(depth, Integer::max);
+		Logger.tag(LTags.TASKS.tag).trace("Queued {} task, {} queued.", lane, depth);
+		return task;
+	}
+
+	public static Task<?> submit(Lane lane, Runnable work) {
+		return submit(new Task<>(lane, PRIORITY_NORMAL, work));
+	}
+
+	public static <T> Task<T> submit(Lane lane, int priority, Callable<T> work) {
+		return submit(new Task<>(lane, priority, work));
+	}
+
+	/**
+	 Checks whether the task running on this thread has been cancelled, so long running work can stop early.
+	 @return True if the current task was cancelled or the thread was interrupted.
+	 */
+	public static boolean isCancelled() {
+		Task<?> task = currentTask.get();
+		return (task != null && task.isCancelled()) || Thread.currentThread().isInterrupted();
+	}
+
+	/**
+	 Logs how busy each lane is.
+	 */
+	public static void logMetrics() {
+		for (Lane lane : Lane.values()) {
+			Logger.tag(LTags.TASKS.tag).info("{} lane: {} queued (peak {}), {} running, {} completed, {} cancelled, longest wait {}ms.",
+					lane, lane.getQueueDepth(), lane.getPeakQueueDepth(), lane.getRunningCount(), lane.getCompletedCount(),
+					lane.getCancelledCount(), lane.getLongestWaitMillis());
+		}
+	}
+}
@@ -64,7 +64,7 @@ public class Card {
 	 */
 	public Card(JSONObject cardJson, int id) throws JSONException {
 		this.id = id;
-		Logger.tag(LTags.DB_INIT.tag).info("Initializing card {}", id);
+		Logger.tag(LTags.DB_INIT.tag).trace("Initializing card {}", id);
 		name = cardJson.getString("Name");
 		type = cardJson.getString("Type");
 		archetype = Archetype.fromString(cardJson.getString("Archetype"));
@@ -102,12 +102,84 @@ public class Card {
 		keywords = Collections.unmodifiableList(mutKeywords);
 
 		image = new File(ImgStore.CARD_IMAGE_PATH + cardJson.optString("ImageName", "none"));
+		checkImageExists();
+
+		rarity = Rarity.fromChar(cardJson.optString("Rarity", "?").charAt(0));
+		pack = cardJson.optString("Pack", "NONE");
+	}
+
+	/**
+	 Warns if the card's art is missing. Cards restored from a snapshot need to be checked separately, since the art can
+	 go missing without the JSON changing.
+	 */
+	void checkImageExists() {
 		if (!image.exists()) {
 			Logger.tag(LTags.DB_INIT.tag).warn("Card image for {} not found in {}.", name, image.getAbsolutePath());
 		}
+	}
 
-		rarity = Rarity.fromChar(cardJson.optString("Rarity", "?").charAt(0));
-		pack = cardJson.optString("Pack", "NONE");
+	/**
+	 Constructs a card directly from its fields. Used when restoring cards from a database snapshot.
+	 */
+	Card(int id, String name, String type, Archetype archetype, int cost, CardField power, CardField health,
+		 CardField channel, CardField charges, CardField slots, String cardText, int textSize, List<String> keywords,
+		 File image, Rarity rarity, String pack) {
+		this.id = id;
+		this.name = name;
+		this.type = type;
+		this.archetype = archetype;
+		this.cost = cost;
+		this.power = power;
+		this.health = health;
+		this.channel = channel;
+		this.charges = charges;
+		this.slots = slots;
+		this.cardText = cardText;
+		this.textSize = textSize;
+		this.keywords = Collections.unmodifiableList(keywords);
+		this.image = image;
+		this.rarity = rarity;
+		this.pack = pack;
+	}
+
+	/**
+	 Returns this card with a different id.
+	 @param newId The id for the copy.
+	 @return This card if the id already matches, otherwise a copy with the new id.
+	 */
+	Card withId(int newId) {
+		if (newId == id) {
+			return this;
+		}
+		return new Card(newId, name, type, archetype, cost, power, health, channel, charges, slots, cardText, textSize,
+				keywords, image, rarity, pack);
+	}
+
+	private static boolean sameField(CardField a, CardField b) {
+		return a.data == b.data && a.string.equals(b.string);
+	}
+
+	/**
+	 Checks if every field other than the id matches another card.
+	 @param other The card to compare against.
+	 @return True if the cards only differ by id.
+	 */
+	boolean hasSameFields(Card other) {
+		return name.equals(other.name)
+				&& type.equals(other.type)
+				&& archetype == other.archetype
+				&& cost.equals(other.cost)
+				&& sameField(power, other.power)
+				&& sameField(health, other.health)
+				&& sameField(channel, other.channel)
+				&& sameField(charges, other.charges)
+				&& sameField(slots, other.slots)
+				&& cardText.equals(other.cardText)
+				&& textSize == other.textSize
+				&& keywords.equals(other.keywords)
+				&& image.equals(other.image)
+				&& rarity == other.rarity
+				&& pack.equals(other.pack);
 	}
 
 	/**
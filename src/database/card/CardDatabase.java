@@ -1,42 +1,44 @@
 package database.card;
 
 import application.LTags;
+import application.TaskScheduler;
+import application.TaskScheduler.Lane;
 import database.image.ImgStore;
 import gui.Gui;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.tinylog.Logger;
 
 import javax.swing.*;
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  Class that handles data for all cards. Any mutations to cards should be done through this. */
 public class CardDatabase {
-	//Some of the tasks here can take a bit. So keep them off of the Swing event thread.
-	private static final ExecutorService databaseWorkerThread = Executors.newSingleThreadExecutor();
 	//Reference to a card loading event. Used to allow for the thread to be interrupted if something else gets clicked.
 	private static Future<?> cardToLoad;
 	//The previously loaded card image.
 	private static int previousCard = -1;
 	//Database instance. Should be initialized via initCardDatabase before anything else happens.
-	private static CardDatabaseInstance instance = new CardDatabaseInstance();
+	private static volatile CardDatabaseInstance instance = new CardDatabaseInstance();
 	private static final AtomicBoolean isLoadingInstance = new AtomicBoolean(false);
-
-	private static class CardDatabaseInstance {
+	//The most recently read card database, and the watcher for it if hot reloading is on.
+	private static volatile File databaseFile;
+	private static CardFileWatcher fileWatcher;
+	private static boolean watchingFiles = false;
+	//The cards from the last load that was applied, matched up with their JSON. Only used on the mutation lane.
+	private static CardLoader.Result lastLoad;
+
+	static class CardDatabaseInstance {
 		//Map of cards sorted by name. Immutable.
 		private final Map<String, Card> cardMap;
 		//List of cards. The id number on a Card object correponds to this. Try using this over the map when possible. Immutable.
 		private final List<Card> cardList;
 		private final Map<String, Map<Rarity, List<Card>>> packs;
+		private final CardIndex index;
 		private final Deck deck;
 		private final Deck trunk;
 
@@ -44,52 +46,91 @@ public class CardDatabase {
 			cardMap = new HashMap<>(0);
 			cardList = new ArrayList<>(0);
 			packs = new HashMap<>(0);
+			index = new CardIndex(cardList);
 			trunk = new Deck(Integer.MAX_VALUE, Integer.MAX_VALUE, null);
 			deck = new Deck(4, 40, trunk);
 		}
 
-		private CardDatabaseInstance(File path) throws IOException {
-			InputStream databaseStream;
-			databaseStream = Files.newInputStream(Paths.get(path.getAbsolutePath()));
+		CardDatabaseInstance(File path) throws IOException {
+			this(loadCards(path, true, null));
+		}
 
-			Logger.tag(LTags.DB_INIT.tag).info("Loading cards.");
-			cardList = new ArrayList<>(300);
-			cardMap = new HashMap<>(300);
+		private CardDatabaseInstance(CardSnapshot loaded) {
+			cardList = loaded.cards;
+			packs = loaded.packs;
+			cardMap = new HashMap<>(cardList.size() * 2);
+			for (Card card : cardList) {
+				cardMap.put(card.name, card);
+			}
+			index = new CardIndex(cardList);
 			trunk = new Deck(Integer.MAX_VALUE, Integer.MAX_VALUE);
 			deck = new Deck(4, 40, trunk);
 
-			//Read in json objects for cards one at a time to avoid reading all of the JSON to memory at once.
-			JSONTokener databaseJson = new JSONTokener(databaseStream);
-			databaseJson.next('[');
-			int cardNum = 0;
-			while (databaseJson.skipTo('{') != 0) {
-				try {
-					JSONObject cardJson = new JSONObject(databaseJson);
-					Card card = new Card(cardJson, cardNum);
-					cardList.add(card);
-					cardMap.put(card.name, card);
-					cardNum++;
-					Logger.tag(LTags.DB_INIT.tag).debug(() -> "Loaded card " + card.name);
-				} catch (JSONException e) {
-					Logger.tag(LTags.DB_INIT.tag).error(e, "Unable to create card #{}", cardNum);
-					Gui.displayPopup(e.getMessage());
-					break;
+			getMetrics();
+			Logger.tag(LTags.DB_INIT.tag).info("Built {} packs. Updating GUI.", packs.size());
+		}
+
+		/**
+		 Reads cards from a snapshot if there's an up to date one, otherwise parses the JSON and writes a new snapshot.
+		 @param allowPartial Whether to keep the cards before a broken one instead of failing.
+		 @param previous     An earlier load of the file, so only the cards that changed since are parsed, or null.
+		 */
+		private static CardSnapshot loadCards(File path, boolean allowPartial, CardLoader.Result previous) throws IOException {
+			Logger.tag(LTags.DB_INIT.tag).info("Loading cards.");
+			ByteBuffer json = CardLoader.read(path);
+			byte[] jsonHash = CardSnapshot.hash(json);
+			File snapshotFile = CardSnapshot.getFile(path);
+			CardSnapshot snapshot = CardSnapshot.read(snapshotFile, jsonHash);
+			if (snapshot != null) {
+				return new CardSnapshot(snapshot.cards, snapshot.packs, CardLoader.fromSnapshot(json, snapshot.cards));
+			}
+
+			CardLoader.Result loaded = CardLoader.load(json, previous);
+			if (!allowPartial && !loaded.complete) {
+				throw new IOException("Card #" + loaded.cards.size() + " in " + path.getName() + " is invalid.");
+			}
+			Logger.tag(LTags.DB_INIT.tag).info("Loaded {} cards. Building Packs", loaded.cards.size());
+			snapshot = new CardSnapshot(loaded.cards, buildPacks(loaded.cards), loaded);
+			//Don't snapshot a partial load, or the error popup would go away without the JSON being fixed.
+			if (loaded.complete) {
+				CardSnapshot.write(snapshotFile, jsonHash, snapshot.cards, snapshot.packs);
+			}
+			return snapshot;
+		}
+
+		/**
+		 Carries the deck and trunk over from the previous instance, for cards that survived a reload.
+		 */
+		private void copyCollections(CardDatabaseInstance previous, CardListDiff diff) {
+			synchronized (previous.trunk) {
+				for (Card card : previous.trunk.getCardSet()) {
+					int newId = diff.mapId(card.id);
+					if (newId != -1) {
+						trunk.setCopies(newId, previous.trunk.getCopies(card.id));
+					}
+				}
+			}
+			synchronized (previous.deck) {
+				for (Card card : previous.deck.getCardSet()) {
+					int newId = diff.mapId(card.id);
+					if (newId != -1) {
+						deck.setCopies(newId, previous.deck.getCopies(card.id));
+					}
 				}
 			}
-			Logger.tag(LTags.DB_INIT.tag).info("Loaded {} cards. Building Packs", cardList.size());
+		}
 
-			packs = new HashMap<>(10);
+		private static Map<String, Map<Rarity, List<Card>>> buildPacks(List<Card> cardList) {
+			Map<String, Map<Rarity, List<Card>>> packs = new HashMap<>(10);
 			for (Card card : cardList) {
-				Logger.tag(LTags.DB_INIT.tag).info("Card #{} - {} has a rarity of {}.", card.id, card.name, card.rarity.abbreviation);
+				Logger.tag(LTags.DB_INIT.tag).debug("Card #{} - {} has a rarity of {}.", card.id, card.name, card.rarity.abbreviation);
 				if (card.rarity != Rarity.UNKNOWN) {
 					Map<Rarity, List<Card>> pack = packs.computeIfAbsent(card.pack, (p) -> new EnumMap<>(Rarity.class));
 					List<Card> pool = pack.computeIfAbsent(card.rarity, (r) -> new ArrayList<>(30));
 					pool.add(card);
 				}
 			}
-
-			getMetrics();
-			Logger.tag(LTags.DB_INIT.tag).info("Built {} packs. Updating GUI.", packs.size());
+			return packs;
 		}
 
 		private void getMetrics() {
@@ -204,30 +245,41 @@ public class CardDatabase {
 			}
 			Map<Rarity, List<Card>> pack = packs.get(packName);
 			Random rng = new Random(System.currentTimeMillis());
-			Set<Card> pulls = new HashSet<>(numPacks * Rarity.cardsPerPack() / 2);
+			for (Rarity rarity : Rarity.values()) {
+				if (rarity.quantity > 0 && !pack.containsKey(rarity)) {
+					Logger.tag(LTags.DB_ACTION.tag).error("Attempted to pull cards of rarity {} from a pack with no cards defined at that rarity.", packName);
+					Gui.displayPopup(packName + " does not contain any cards with a rarity of " + rarity.abbreviation);
+					return;
+				}
+			}
 
-			synchronized (trunk) {
-				for (int i = 0; i < numPacks; i++) {
-					for (Rarity rarity : Rarity.values()) {
-						for (int j = 0; j < rarity.quantity; j++) {
-							if (!pack.containsKey(rarity)) {
-								Logger.tag(LTags.DB_ACTION.tag).error("Attempted to pull cards of rarity {} from a pack with no cards defined at that rarity.", packName);
-								Gui.displayPopup(packName + " does not contain any cards with a rarity of " + rarity.abbreviation);
-								return;
-							}
-							List<Card> pool = pack.get(rarity);
-							Card card = pool.get(rng.nextInt(pool.size()));
-							CardCount result = trunk.setCopies(card.id, trunk.getCopies(card.id) + 1);
-							if (result != CardCount.INVALID) {
-								pulls.add(card);
-							}
-						}
+			int[] pulledIds = new int[numPacks * Rarity.cardsPerPack()];
+			int pullCount = 0;
+			for (int i = 0; i < numPacks; i++) {
+				for (Rarity rarity : Rarity.values()) {
+					for (int j = 0; j < rarity.quantity; j++) {
+						List<Card> pool = pack.get(rarity);
+						pulledIds[pullCount++] = pool.get(rng.nextInt(pool.size())).id;
 					}
 				}
 			}
 
-			for (Card card : pulls) {
-				Gui.updateCardInfo(card.id, deck.getCopiesState(card.id));
+			int added;
+			synchronized (trunk) {
+				added = trunk.addMany(pulledIds);
+			}
+
+			Set<Integer> pulls = new HashSet<>(added);
+			for (int i = 0; i < added; i++) {
+				if (pulls.add(pulledIds[i])) {
+					Gui.updateCardInfo(pulledIds[i], deck.getCopiesState(pulledIds[i]));
+				}
+			}
+		}
+
+		private CardCount getCopiesStateInDeck(int cardId) {
+			synchronized (deck) {
+				return deck.getCopiesState(cardId);
 			}
 		}
 
@@ -246,9 +298,7 @@ public class CardDatabase {
 		public void fillTrunk() {
 			Logger.tag(LTags.DB_ACTION.tag).info("Filling trunk.");
 			synchronized (trunk) {
-				for (Card card : cardList) {
-					trunk.setCopies(card.id, 99);
-				}
+				trunk.fillAll(cardList.size(), 99);
 			}
 
 			//Look into adding a proper bulk update later.
@@ -273,14 +323,24 @@ public class CardDatabase {
 
 	public static void initCardDatabase(File path) {
 		if (path.exists()) {
-			isLoadingInstance.set(true);
-			databaseWorkerThread.submit(() -> {
-				Thread.currentThread().setName("Card Database Worker");
+			if (!path.getAbsoluteFile().equals(databaseFile)) {
+				databaseFile = path.getAbsoluteFile();
+				restartFileWatcher();
+			}
+			TaskScheduler.submit(Lane.MUTATION, () -> {
+				if (!instance.cardList.isEmpty() && reloadCardDatabase(path)) {
+					return;
+				}
+
 				Logger.tag(LTags.DB_INIT.tag).info("Initializing card database.");
+				isLoadingInstance.set(true);
 				Gui.resetCardList();
 				try {
 					Gui.setBusyLoading(true);
-					instance = new CardDatabaseInstance(path);
+					CardSnapshot loaded = CardDatabaseInstance.loadCards(path, true, lastLoad);
+					instance = new CardDatabaseInstance(loaded);
+					lastLoad = loaded.source;
+					ImgStore.refreshCardVersions(instance.cardList);
 					Gui.rebuildCardList(instance.packs.keySet());
 				} catch (IOException e) {
 					Logger.tag(LTags.DB_INIT.tag).error(e, "Unable to open and read card database file.");
@@ -296,19 +356,155 @@ public class CardDatabase {
 		}
 	}
 
+	/**
+	 Reloads the card database in place, keeping the deck and trunk for cards that are still around and only updating
+	 the table rows and images for cards that were added, changed or removed. If any card in the file is invalid, the
+	 loaded cards are left as they are. Must be run on the database worker.
+	 @param path The card database to read.
+	 @return False if the cards couldn't be matched up by name, in which case a full load is needed.
+	 */
+	private static boolean reloadCardDatabase(File path) {
+		Logger.tag(LTags.DB_INIT.tag).info("Reloading card database.");
+		Gui.setBusyLoading(true);
+		try {
+			CardDatabaseInstance previous = instance;
+			CardSnapshot loaded = CardDatabaseInstance.loadCards(path, true, lastLoad);
+			//A half edited card would otherwise look like every card after it was removed, and take their copies with it.
+			//CardLoader has already shown the error.
+			if (!loaded.complete) {
+				Logger.tag(LTags.DB_INIT.tag).warn("{} has an invalid card, keeping the cards that are already loaded.", path.getName());
+				return true;
+			}
+			lastLoad = loaded.source;
+			//Art can change without the JSON changing, and nothing else notices if the watcher is off.
+			Set<Integer> artChanged = ImgStore.refreshCardVersions(previous.cardList);
+			List<Card> patchedList = new ArrayList<>(loaded.cards.size());
+			CardListDiff diff = CardListDiff.compute(previous.cardList, loaded.cards, patchedList);
+			if (diff == null) {
+				Logger.tag(LTags.DB_INIT.tag).info("Card names are not unique, falling back to a full load.");
+				return false;
+			}
+
+			Logger.tag(LTags.DB_INIT.tag).info("Reload removed {}, changed {} and added {} cards.", diff.removedIds.length, diff.changedIds.length, diff.addedCount);
+			if (diff.isEmpty()) {
+				Logger.tag(LTags.DB_INIT.tag).info("Art changed for {} cards.", artChanged.size());
+				redrawSelectedCard(artChanged);
+				return true;
+			}
+
+			CardDatabaseInstance patched = new CardDatabaseInstance(new CardSnapshot(patchedList, CardDatabaseInstance.buildPacks(patchedList)));
+			patched.copyCollections(previous, diff);
+			for (int oldId : diff.removedIds) {
+				ImgStore.invalidateCardImage(previous.cardList.get(oldId));
+			}
+			for (int newId : diff.changedIds) {
+				ImgStore.invalidateCardImage(patched.cardList.get(newId));
+			}
+			ImgStore.refreshCardVersions(patched.cardList);
+
+			Gui.applyCardListDiff(diff, () -> {
+				instance = patched;
+				//Keep the selected card pointing at the same card, and redraw it if it changed.
+				if (previousCard != -1) {
+					int selected = diff.mapId(previousCard);
+					boolean redraw = artChanged.contains(previousCard);
+					previousCard = selected;
+					if (selected != -1 && (redraw || diff.isChanged(selected))) {
+						previousCard = -1;
+						loadAndDisplayImage(selected);
+					}
+				}
+			}, patched.packs.keySet(), patched.deck.getSize());
+			return true;
+		} catch (IOException e) {
+			Logger.tag(LTags.DB_INIT.tag).error(e, "Unable to open and read card database file.");
+			Gui.displayPopup("Unable to read " + path.getName() + ".");
+			return true;
+		} finally {
+			Gui.setBusyLoading(false);
+		}
+	}
+
+	/**
+	 Reads every card from a card database without loading it, for use outside of the GUI.
+	 @param path The card database to read.
+	 @return The cards, in id order.
+	 @throws IOException If the file can't be read or any card in it is invalid.
+	 */
+	public static List<Card> readCards(File path) throws IOException {
+		return CardDatabaseInstance.loadCards(path, false, null).cards;
+	}
+
+	/**
+	 Turns watching the card database and card art for changes on or off. While on, edits to either are picked up
+	 without needing to read the cards again.
+	 @param enabled Whether to watch for changes.
+	 */
+	public static synchronized void setWatchingFiles(boolean enabled) {
+		watchingFiles = enabled;
+		restartFileWatcher();
+	}
+
+	private static synchronized void restartFileWatcher() {
+		if (fileWatcher != null) {
+			fileWatcher.close();
+			fileWatcher = null;
+		}
+
+		if (watchingFiles && databaseFile != null) {
+			try {
+				fileWatcher = new CardFileWatcher(databaseFile);
+			} catch (IOException e) {
+				Logger.tag(LTags.DB_ACTION.tag).error(e, "Unable to watch {} for changes.", databaseFile);
+				Gui.displayPopup("Unable to watch the card files for changes.");
+			}
+		}
+	}
+
+	/**
+	 Drops cached images for cards whose art changed, and redraws the selected card if it was one of them.
+	 @param artFileNames The names of the art files that changed, or null if all of them should be treated as changed.
+	 */
+	static void refreshCardArt(Set<String> artFileNames) {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
+			Set<Integer> affected = new HashSet<>();
+			for (Card card : instance.cardList) {
+				if (artFileNames == null || artFileNames.contains(card.image.getName())) {
+					ImgStore.invalidateCardImage(card);
+					affected.add(card.id);
+				}
+			}
+			Logger.tag(LTags.DB_ACTION.tag).info("Art changed for {} cards.", affected.size());
+			redrawSelectedCard(affected);
+		});
+	}
+
+	/**
+	 Shows the selected card again if it's one of the given cards.
+	 */
+	private static void redrawSelectedCard(Set<Integer> cardIds) {
+		SwingUtilities.invokeLater(() -> {
+			if (cardIds.contains(previousCard)) {
+				int selected = previousCard;
+				previousCard = -1;
+				loadAndDisplayImage(selected);
+			}
+		});
+	}
+
 	public static void fillTrunk() {
-		databaseWorkerThread.submit(() -> instance.fillTrunk());
+		TaskScheduler.submit(Lane.MUTATION, () -> instance.fillTrunk());
 	}
 
 	public static void clearTrunk() {
-		databaseWorkerThread.submit(() -> {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
 			instance.clearTrunk();
 			Gui.clearDeck();
 		});
 	}
 
 	public static void openPacks(String packName, int numPacks) {
-		databaseWorkerThread.submit(() -> {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
 			Gui.setBusyLoading(true);
 			instance.openPacks(packName, numPacks);
 			Gui.setBusyLoading(false);
@@ -326,13 +522,14 @@ public class CardDatabase {
 			cardToLoad.cancel(true);
 		}
 
-		cardToLoad = databaseWorkerThread.submit(() -> {
+		cardToLoad = TaskScheduler.submit(Lane.INTERACTIVE, () -> {
 			try {
-				Card card = instance.cardList.get(cardId);
+				CardDatabaseInstance current = instance;
+				Card card = current.cardList.get(cardId);
 				Logger.tag(LTags.DB_ACTION.tag).info("Requesting images for '{}'.", card.name);
 				Gui.setBusyLoading(true);
 				ImageIcon image = ImgStore.getCardImage(card);
-				Gui.setSelectedCard(cardId, instance.deck.getCopiesState(cardId), image);
+				Gui.setSelectedCard(cardId, current.getCopiesStateInDeck(cardId), image);
 			} finally {
 				Gui.setBusyLoading(false);
 			}
@@ -340,54 +537,78 @@ public class CardDatabase {
 	}
 
 	public static void clearDeck() {
-		databaseWorkerThread.submit(() -> {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
 			instance.clearDeck();
 			Gui.clearDeck();
 		});
 	}
 
 	public static void readDeck(File file) {
-		databaseWorkerThread.submit(() -> {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
 			instance.deck.clear();
 			instance.readDeckFile(file);
 		});
 	}
 
+	/**
+	 Saves the deck as a list of card names and copies. The deck is read in order with any edits before it, and the file
+	 is written on the export lane so it doesn't hold up edits after it.
+	 */
 	public static void saveDeck(File file) {
-		databaseWorkerThread.submit(() -> {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
 			if (instance.deck.getSize() == 0) {
 				Logger.tag(LTags.DB_ACTION.tag).info("User attempted to save an empty deck.");
 				Gui.displayPopup("Your deck is currently empty.");
 				return;
 			}
 
-			try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-				writer.write("// Deck with " + instance.deck.getSize() + " cards - " + Calendar.getInstance().getTime());
-				writer.newLine();
-				for (Card card : instance.deck.getCardSet()) {
-					writer.write(instance.deck.getCopies(card.id) + " " + card.name);
-					writer.newLine();
-				}
-				Gui.setBusyLoading(false);
-			} catch (IOException e) {
-				Logger.tag(LTags.DB_ACTION.tag).error("Unable to write deck to {}", file.getAbsolutePath());
+			List<String> lines = new ArrayList<>(instance.deck.getCardSet().size() + 1);
+			lines.add("// Deck with " + instance.deck.getSize() + " cards - " + Calendar.getInstance().getTime());
+			for (Card card : instance.deck.getCardSet()) {
+				lines.add(instance.deck.getCopies(card.id) + " " + card.name);
 			}
+
+			TaskScheduler.submit(Lane.EXPORT, () -> {
+				try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+					for (String line : lines) {
+						writer.write(line);
+						writer.newLine();
+					}
+				} catch (IOException e) {
+					Logger.tag(LTags.DB_ACTION.tag).error("Unable to write deck to {}", file.getAbsolutePath());
+				}
+			});
 		});
 	}
 
+	/**
+	 Writes out images of the deck. Like saveDeck, the deck is read in order with edits and rendered on the export lane.
+	 */
 	public static void saveDeckImage(File file) {
-		databaseWorkerThread.submit(() -> {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
 			if (instance.deck.getSize() <= 0) {
 				Logger.tag(LTags.DB_ACTION.tag).info("User attempted to save an empty deck.");
 				Gui.displayPopup("Your deck is currently empty.");
 			} else {
-				ImgStore.writeDeckImage(instance.deck.getCardList(), file);
+				List<Card> cards = instance.deck.getCardList();
+				TaskScheduler.submit(Lane.EXPORT, () -> ImgStore.writeDeckImage(cards, file));
 			}
 		});
 	}
 
+	/**
+	 Gets the cards in the deck, with a copy of a card for each copy in the deck.
+	 @param callback Called on the Swing thread with the cards.
+	 */
+	public static void requestDeckList(Consumer<List<Card>> callback) {
+		TaskScheduler.submit(Lane.MUTATION, () -> {
+			List<Card> cards = instance.deck.getCardList();
+			SwingUtilities.invokeLater(() -> callback.accept(cards));
+		});
+	}
+
 	public static void addToDeck(int cardId, int amount) {
-		databaseWorkerThread.submit(() -> instance.addToDeck(cardId, amount));
+		TaskScheduler.submit(Lane.MUTATION, () -> instance.addToDeck(cardId, amount));
 	}
 
 	public static Card getCard(int index) {
@@ -398,6 +619,41 @@ public class CardDatabase {
 		return instance.cardList.size();
 	}
 
+	/**
+	 Returns the card index for the current database.
+	 */
+	public static CardIndex getIndex() {
+		return instance.index;
+	}
+
+	/**
+	 Returns the ids of the cards in the deck.
+	 @return A copy of the set, or an empty set while the database is loading.
+	 */
+	public static BitSet getCardsInDeck() {
+		CardDatabaseInstance current = instance;
+		if (isLoadingInstance.get()) {
+			return new BitSet();
+		}
+		synchronized (current.deck) {
+			return current.deck.getMembers();
+		}
+	}
+
+	/**
+	 Returns the ids of the cards in the trunk.
+	 @return A copy of the set, or an empty set while the database is loading.
+	 */
+	public static BitSet getCardsInTrunk() {
+		CardDatabaseInstance current = instance;
+		if (isLoadingInstance.get()) {
+			return new BitSet();
+		}
+		synchronized (current.trunk) {
+			return current.trunk.getMembers();
+		}
+	}
+
 	//TODO: Figure out how I can make this not garbage.
 	public static int getCountInTrunk(int cardId) {
 		if (!isLoadingInstance.get()) {
@@ -0,0 +1,96 @@
+package database.card;
+
+import application.LTags;
+import database.image.ImgStore;
+import org.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ Watches the card database file and the card art directory, and reloads whatever changed. Bursts of events (editors
+ often write a file several times when saving) are collapsed into a single reload once things go quiet.
+ */
+class CardFileWatcher {
+	private static final long DEBOUNCE_MS = 300;
+
+	private final File databaseFile;
+	private final Path databaseDir;
+	private final Path artDir;
+	private final WatchService watchService;
+	private final Thread watchThread;
+
+	CardFileWatcher(File databaseFile) throws IOException {
+		this.databaseFile = databaseFile.getAbsoluteFile();
+		databaseDir = this.databaseFile.getParentFile().toPath();
+		artDir = new File(ImgStore.CARD_IMAGE_PATH).getAbsoluteFile().toPath();
+		watchService = FileSystems.getDefault().newWatchService();
+		databaseDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		if (artDir.toFile().isDirectory() && !artDir.equals(databaseDir)) {
+			artDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		}
+
+		watchThread = new Thread(this::watch, "Card File Watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+		Logger.tag(LTags.DB_ACTION.tag).info("Watching {} and {} for changes.", this.databaseFile, artDir);
+	}
+
+	void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			Logger.tag(LTags.DB_ACTION.tag).warn(e, "Unable to stop watching for file changes.");
+		}
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				boolean databaseChanged = false;
+				boolean allArtChanged = false;
+				Set<String> changedArt = new HashSet<>(4);
+				//Keep collecting until nothing has changed for a little while.
+				while (key != null) {
+					Path dir = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == OVERFLOW) {
+							databaseChanged = true;
+							allArtChanged = true;
+							continue;
+						}
+
+						String fileName = ((Path) event.context()).getFileName().toString();
+						if (dir.equals(databaseDir) && fileName.equals(databaseFile.getName())) {
+							databaseChanged = true;
+						}
+						if (dir.equals(artDir)) {
+							changedArt.add(fileName);
+						}
+					}
+					key.reset();
+					key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+				}
+
+				//Reload the cards first, since the art refresh looks them up by image.
+				if (databaseChanged) {
+					Logger.tag(LTags.DB_ACTION.tag).info("{} changed, reloading.", databaseFile.getName());
+					CardDatabase.initCardDatabase(databaseFile);
+				}
+				if (allArtChanged || !changedArt.isEmpty()) {
+					Logger.tag(LTags.DB_ACTION.tag).info("Card art changed: {}", allArtChanged ? "everything" : changedArt);
+					CardDatabase.refreshCardArt(allArtChanged ? null : changedArt);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			Logger.tag(LTags.DB_ACTION.tag).info("Stopped watching for file changes.");
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package database.card;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ Sets of card ids grouped by archetype, rarity, pack and type, built once per card database. Filters on those fields can
+ be answered for the whole database at once by combining sets, a word of 64 cards at a time, rather than card by card.
+ The sets returned are copies, so they can be combined freely.
+
+ Also narrows down text searches on names, card text and keywords with a trigram index, which is built the first time
+ it's needed so loading the cards doesn't wait on it.
+ */
+public class CardIndex {
+	public enum TextField {
+		NAME,
+		TEXT,
+		KEYWORDS
+	}
+
+	private final List<Card> cards;
+	private final int cardCount;
+	private final Map<Archetype, BitSet> archetypes = new EnumMap<>(Archetype.class);
+	private final Map<Rarity, BitSet> rarities = new EnumMap<>(Rarity.class);
+	private final Map<String, BitSet> packs = new HashMap<>();
+	private final Map<String, BitSet> types = new HashMap<>();
+	private volatile Map<TextField, TrigramIndex> textIndexes;
+
+	public CardIndex(List<Card> cards) {
+		this.cards = cards;
+		cardCount = cards.size();
+		for (Card card : cards) {
+			archetypes.computeIfAbsent(card.archetype, (a) -> new BitSet(cardCount)).set(card.id);
+			rarities.computeIfAbsent(card.rarity, (r) -> new BitSet(cardCount)).set(card.id);
+			packs.computeIfAbsent(card.pack, (p) -> new BitSet(cardCount)).set(card.id);
+			types.computeIfAbsent(card.type, (t) -> new BitSet(cardCount)).set(card.id);
+		}
+	}
+
+	public int getCardCount() {
+		return cardCount;
+	}
+
+	/**
+	 Returns a card from the list the index was built from, which stays the same even if the database is reloaded.
+	 */
+	public Card getCard(int cardId) {
+		return cards.get(cardId);
+	}
+
+	/**
+	 Returns a set of every card.
+	 */
+	public BitSet all() {
+		BitSet all = new BitSet(cardCount);
+		all.set(0, cardCount);
+		return all;
+	}
+
+	public BitSet archetypes(Collection<Archetype> selected) {
+		return union(archetypes, selected);
+	}
+
+	public BitSet rarities(Collection<Rarity> selected) {
+		return union(rarities, selected);
+	}
+
+	public BitSet pack(String pack) {
+		return union(packs, Collections.singleton(pack));
+	}
+
+	/**
+	 Returns the cards with a type matching a predicate. The predicate is only run once for each distinct type.
+	 @param matches Tests a card type.
+	 */
+	public BitSet types(Predicate<String> matches) {
+		BitSet union = new BitSet(cardCount);
+		for (Map.Entry<String, BitSet> type : types.entrySet()) {
+			if (matches.test(type.getKey())) {
+				union.or(type.getValue());
+			}
+		}
+		return union;
+	}
+
+	/**
+	 Narrows down the cards that could contain a string, ignoring case.
+	 @param field The text to search.
+	 @param query The string to look for.
+	 @return A superset of the cards containing the string, which still need checking one by one.
+	 */
+	public BitSet containing(TextField field, String query) {
+		BitSet candidates = getTextIndex(field).candidates(Collections.singletonList(query.toLowerCase()));
+		return candidates != null ? candidates : all();
+	}
+
+	/**
+	 Narrows down the cards that could match a regex, ignoring case. Only the plain runs of characters any match has to
+	 contain are used, so how much this narrows things down depends on the regex.
+	 @param field The text to search.
+	 @param regex The regex to match.
+	 @return A superset of the cards with a match, which still need checking one by one.
+	 */
+	public BitSet matching(TextField field, String regex) {
+		List<String> literals = TrigramIndex.requiredLiterals(regex);
+		for (int i = 0; i < literals.size(); i++) {
+			literals.set(i, literals.get(i).toLowerCase());
+		}
+		BitSet candidates = getTextIndex(field).candidates(literals);
+		return candidates != null ? candidates : all();
+	}
+
+	private TrigramIndex getTextIndex(TextField field) {
+		Map<TextField, TrigramIndex> indexes = textIndexes;
+		if (indexes == null) {
+			synchronized (this) {
+				indexes = textIndexes;
+				if (indexes == null) {
+					indexes = buildTextIndexes();
+					textIndexes = indexes;
+				}
+			}
+		}
+		return indexes.get(field);
+	}
+
+	private Map<TextField, TrigramIndex> buildTextIndexes() {
+		TrigramIndex names = new TrigramIndex(cardCount);
+		TrigramIndex text = new TrigramIndex(cardCount);
+		TrigramIndex keywords = new TrigramIndex(cardCount);
+		for (Card card : cards) {
+			names.add(card.id, card.name.toLowerCase());
+			text.add(card.id, card.cardText.toLowerCase());
+			for (String keyword : card.keywords) {
+				keywords.add(card.id, keyword.toLowerCase());
+			}
+		}
+
+		Map<TextField, TrigramIndex> indexes = new EnumMap<>(TextField.class);
+		indexes.put(TextField.NAME, names);
+		indexes.put(TextField.TEXT, text);
+		indexes.put(TextField.KEYWORDS, keywords);
+		return indexes;
+	}
+
+	private <K> BitSet union(Map<K, BitSet> index, Collection<K> keys) {
+		BitSet union = new BitSet(cardCount);
+		for (K key : keys) {
+			BitSet cards = index.get(key);
+			if (cards != null) {
+				union.or(cards);
+			}
+		}
+		return union;
+	}
+}
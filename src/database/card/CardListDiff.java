@@ -0,0 +1,99 @@
+package database.card;
+
+import java.util.*;
+
+/**
+ Difference between the loaded card list and a freshly read one, matched up by card name. Cards that survive keep their
+ relative order and are packed down to fill the gaps left by removed cards, and new cards are appended to the end, so a
+ table showing the list can be patched with a few row events instead of being rebuilt.
+ */
+public class CardListDiff {
+	/** Maps each old card id to its new id, or -1 if the card was removed. */
+	private final int[] oldToNewIds;
+	/** Old ids of removed cards, ascending. */
+	public final int[] removedIds;
+	/** New ids of cards whose fields changed, ascending. */
+	public final int[] changedIds;
+	/** New id of the first added card. Added cards take up every id from here to the end of the list. */
+	public final int firstAddedId;
+	public final int addedCount;
+
+	private CardListDiff(int[] oldToNewIds, int[] removedIds, int[] changedIds, int firstAddedId, int addedCount) {
+		this.oldToNewIds = oldToNewIds;
+		this.removedIds = removedIds;
+		this.changedIds = changedIds;
+		this.firstAddedId = firstAddedId;
+		this.addedCount = addedCount;
+	}
+
+	/**
+	 Compares two card lists and builds the patched list.
+	 @param current The cards that are currently loaded.
+	 @param loaded  The cards that were just read.
+	 @param patched List to fill with the cards from loaded, laid out to match the returned diff.
+	 @return The diff, or null if the lists can't be matched up by name because one of them repeats a name.
+	 */
+	static CardListDiff compute(List<Card> current, List<Card> loaded, List<Card> patched) {
+		Map<String, Card> loadedByName = new HashMap<>(loaded.size() * 2);
+		for (Card card : loaded) {
+			if (loadedByName.put(card.name, card) != null) {
+				return null;
+			}
+		}
+
+		Set<String> currentNames = new HashSet<>(current.size() * 2);
+		int[] oldToNewIds = new int[current.size()];
+		int[] removedIds = new int[current.size()];
+		int removedCount = 0;
+		int[] changedIds = new int[current.size()];
+		int changedCount = 0;
+		for (Card card : current) {
+			if (!currentNames.add(card.name)) {
+				return null;
+			}
+
+			Card loadedCard = loadedByName.get(card.name);
+			if (loadedCard == null) {
+				oldToNewIds[card.id] = -1;
+				removedIds[removedCount++] = card.id;
+			} else {
+				int newId = patched.size();
+				oldToNewIds[card.id] = newId;
+				patched.add(loadedCard.withId(newId));
+				if (!card.hasSameFields(loadedCard)) {
+					changedIds[changedCount++] = newId;
+				}
+			}
+		}
+
+		int firstAddedId = patched.size();
+		for (Card card : loaded) {
+			if (!currentNames.contains(card.name)) {
+				patched.add(card.withId(patched.size()));
+			}
+		}
+
+		return new CardListDiff(oldToNewIds, Arrays.copyOf(removedIds, removedCount), Arrays.copyOf(changedIds, changedCount),
+				firstAddedId, patched.size() - firstAddedId);
+	}
+
+	/**
+	 Returns the new id of a card.
+	 @param oldId The id the card had before the reload.
+	 @return The card's id after the reload, or -1 if it was removed.
+	 */
+	public int mapId(int oldId) {
+		if (oldId < 0 || oldId >= oldToNewIds.length) {
+			return -1;
+		}
+		return oldToNewIds[oldId];
+	}
+
+	public boolean isChanged(int newId) {
+		return Arrays.binarySearch(changedIds, newId) >= 0;
+	}
+
+	public boolean isEmpty() {
+		return removedIds.length == 0 && changedIds.length == 0 && addedCount == 0;
+	}
+}
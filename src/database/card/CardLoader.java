@@ -0,0 +1,203 @@
+package database.card;
+
+import application.LTags;
+import gui.Gui;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ Reads cards from a JSON array of card objects. The file is read into memory and scanned once to find where each object
+ starts and ends, then the objects are parsed in parallel. Card ids are the position of the object in the array.
+
+ A load keeps the bytes of each object, so reloading the same file only parses the objects that changed and reuses the
+ cards for the rest.
+ */
+class CardLoader {
+	private CardLoader() {}
+
+	static class Result {
+		final List<Card> cards;
+		//False if a card failed to parse and the list was cut short.
+		final boolean complete;
+		//The object each card was read from, in the same order as the cards. Null if they can't be matched up.
+		private final ByteBuffer[] objects;
+
+		private Result(List<Card> cards, boolean complete, ByteBuffer[] objects) {
+			this.cards = cards;
+			this.complete = complete;
+			this.objects = objects;
+		}
+
+		/**
+		 Returns the cards keyed by the bytes of the object they were read from.
+		 */
+		private Map<ByteBuffer, Card> getCardsByObject() {
+			if (objects == null) {
+				return Collections.emptyMap();
+			}
+			Map<ByteBuffer, Card> cardsByObject = new HashMap<>(cards.size() * 2);
+			for (int i = 0; i < cards.size(); i++) {
+				cardsByObject.put(objects[i], cards.get(i));
+			}
+			return cardsByObject;
+		}
+	}
+
+	/**
+	 Reads a whole file onto the heap. It isn't memory mapped, since a mapping holds the file open until it's garbage
+	 collected, which stops editors saving it on Windows and can crash the parse if it's truncated while mapped.
+	 @param path The file to read.
+	 @return The contents of the file.
+	 @throws IOException If the file can't be read.
+	 */
+	static ByteBuffer read(File path) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(path.toPath()));
+	}
+
+	/**
+	 Loads every card from the JSON, parsing all of them.
+	 */
+	static Result load(ByteBuffer data) {
+		return load(data, null);
+	}
+
+	/**
+	 Loads every card from the JSON. Objects that are byte for byte the same as one from an earlier load aren't parsed
+	 again, the card from that load is reused instead. If a card fails to parse, the cards before it are kept and the
+	 rest are dropped.
+	 @param data     The JSON to read.
+	 @param previous An earlier load to reuse cards from, or null to parse every card.
+	 @return The cards, in file order.
+	 */
+	static Result load(ByteBuffer data, Result previous) {
+		ByteBuffer[] objects = sliceObjects(data, findObjects(data));
+		int cardCount = objects.length;
+		Map<ByteBuffer, Card> unchanged = previous == null ? Collections.emptyMap() : previous.getCardsByObject();
+		Logger.tag(LTags.DB_INIT.tag).info("Found {} card objects, parsing.", cardCount);
+
+		Card[] cards = new Card[cardCount];
+		JSONException[] errors = new JSONException[cardCount];
+		AtomicInteger parsed = new AtomicInteger();
+		IntStream.range(0, cardCount).parallel().forEach((id) -> {
+			Card card = unchanged.get(objects[id]);
+			if (card != null) {
+				cards[id] = card.withId(id);
+				return;
+			}
+
+			parsed.incrementAndGet();
+			byte[] json = new byte[objects[id].remaining()];
+			//Read through a duplicate, since buffer positions aren't thread safe.
+			objects[id].duplicate().get(json);
+			try {
+				cards[id] = new Card(new JSONObject(new String(json, StandardCharsets.UTF_8)), id);
+			} catch (JSONException e) {
+				errors[id] = e;
+			}
+		});
+
+		for (int id = 0; id < cardCount; id++) {
+			if (errors[id] != null) {
+				Logger.tag(LTags.DB_INIT.tag).error(errors[id], "Unable to create card #{}", id);
+				Gui.displayPopup(errors[id].getMessage());
+				return new Result(new ArrayList<>(Arrays.asList(cards).subList(0, id)), false, Arrays.copyOf(objects, id));
+			}
+		}
+		if (previous != null) {
+			Logger.tag(LTags.DB_INIT.tag).info("Parsed {} changed card objects, reused the other {} cards.", parsed.get(), cardCount - parsed.get());
+		}
+		return new Result(new ArrayList<>(Arrays.asList(cards)), true, objects);
+	}
+
+	/**
+	 Pairs cards read from a snapshot with the objects in the JSON the snapshot was written from, so the next reload can
+	 reuse them.
+	 @param data  The JSON the snapshot was written from.
+	 @param cards The cards from the snapshot, in file order.
+	 @return The cards, matched up with their objects if the counts agree.
+	 */
+	static Result fromSnapshot(ByteBuffer data, List<Card> cards) {
+		ByteBuffer[] objects = sliceObjects(data, findObjects(data));
+		return new Result(cards, true, objects.length == cards.size() ? objects : null);
+	}
+
+	/**
+	 Returns a read only view of each object, which compare and hash by their contents.
+	 */
+	private static ByteBuffer[] sliceObjects(ByteBuffer data, long[] spans) {
+		ByteBuffer[] objects = new ByteBuffer[spans.length / 2];
+		for (int i = 0; i < objects.length; i++) {
+			ByteBuffer view = data.asReadOnlyBuffer();
+			view.position((int) spans[2 * i]);
+			view.limit((int) spans[2 * i + 1]);
+			objects[i] = view.slice();
+		}
+		return objects;
+	}
+
+	/**
+	 Finds the objects directly inside the top level array. Structural characters in JSON are all ASCII, and bytes in
+	 multi-byte UTF-8 sequences never are, so this can run over the raw bytes.
+	 @param data The JSON to scan.
+	 @return Pairs of start (inclusive) and end (exclusive) offsets for each object.
+	 */
+	private static long[] findObjects(ByteBuffer data) {
+		long[] spans = new long[600];
+		int spanCount = 0;
+		int depth = 0;
+		int objectStart = -1;
+		boolean inString = false;
+		boolean escaped = false;
+		int limit = data.limit();
+		for (int i = 0; i < limit; i++) {
+			byte b = data.get(i);
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (b == '\\') {
+					escaped = true;
+				} else if (b == '"') {
+					inString = false;
+				}
+				continue;
+			}
+
+			switch (b) {
+				case '"':
+					inString = true;
+					break;
+				case '[':
+				case '{':
+					if (b == '{' && depth == 1) {
+						objectStart = i;
+					}
+					depth++;
+					break;
+				case ']':
+				case '}':
+					depth--;
+					if (b == '}' && depth == 1) {
+						if (spanCount + 2 > spans.length) {
+							spans = Arrays.copyOf(spans, spans.length * 2);
+						}
+						spans[spanCount++] = objectStart;
+						spans[spanCount++] = i + 1;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		return Arrays.copyOf(spans, spanCount);
+	}
+}
@@ -0,0 +1,244 @@
+package database.card;
+
+import application.LTags;
+import org.tinylog.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ Binary snapshot of a loaded card database, stored next to the JSON it was loaded from. Loading a snapshot skips JSON
+ parsing entirely, and it is only used while the hash of the JSON matches the one it was written with.
+
+ Layout (big endian):
+ magic, version, source hash length + bytes,
+ string count, strings (length + UTF-8 bytes),
+ card count, cards (fields as string table indices and ints),
+ pack count, packs (name index, pool count, pools (rarity ordinal, id count, ids)).
+ */
+class CardSnapshot {
+	private static final int MAGIC = 0x43474442; //CGDB
+	//Bump whenever the layout changes or Card parses JSON differently.
+	private static final int VERSION = 1;
+	private static final String EXT = ".snapshot";
+
+	final List<Card> cards;
+	final Map<String, Map<Rarity, List<Card>>> packs;
+	//False if a card failed to parse and the cards after it are missing. Incomplete loads are never written to disk.
+	final boolean complete;
+	//The cards matched up with the JSON they came from, so the next reload only parses the cards that changed. Null if
+	//the cards weren't read from the JSON.
+	final CardLoader.Result source;
+
+	CardSnapshot(List<Card> cards, Map<String, Map<Rarity, List<Card>>> packs) {
+		this(cards, packs, null);
+	}
+
+	CardSnapshot(List<Card> cards, Map<String, Map<Rarity, List<Card>>> packs, CardLoader.Result source) {
+		this.cards = cards;
+		this.packs = packs;
+		this.source = source;
+		complete = source == null || source.complete;
+	}
+
+	static File getFile(File source) {
+		return new File(source.getPath() + EXT);
+	}
+
+	static byte[] hash(ByteBuffer data) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(data.duplicate());
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			//Every JVM is required to provide SHA-256.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 Reads a snapshot, if there is a valid one for the given source hash.
+	 @param file       The snapshot file.
+	 @param sourceHash The hash of the JSON the cards should come from.
+	 @return The snapshot, or null if it is missing, out of date or unreadable.
+	 */
+	static CardSnapshot read(File file, byte[] sourceHash) {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			ByteBuffer data = CardLoader.read(file);
+			if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+				Logger.tag(LTags.DB_INIT.tag).info("Card snapshot {} is from a different version, ignoring it.", file.getName());
+				return null;
+			}
+
+			byte[] storedHash = new byte[data.getInt()];
+			data.get(storedHash);
+			if (!Arrays.equals(storedHash, sourceHash)) {
+				Logger.tag(LTags.DB_INIT.tag).info("Card snapshot {} is out of date, ignoring it.", file.getName());
+				return null;
+			}
+
+			String[] strings = new String[data.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[data.getInt()];
+				data.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			int cardCount = data.getInt();
+			List<Card> cards = new ArrayList<>(cardCount);
+			Archetype[] archetypes = Archetype.values();
+			Rarity[] rarities = Rarity.values();
+			for (int id = 0; id < cardCount; id++) {
+				String name = strings[data.getInt()];
+				String type = strings[data.getInt()];
+				Archetype archetype = archetypes[data.getInt()];
+				int cost = data.getInt();
+				CardField power = readField(data, strings);
+				CardField health = readField(data, strings);
+				CardField channel = readField(data, strings);
+				CardField charges = readField(data, strings);
+				CardField slots = readField(data, strings);
+				String cardText = strings[data.getInt()];
+				int textSize = data.getInt();
+				int keywordCount = data.getInt();
+				List<String> keywords = new ArrayList<>(keywordCount);
+				for (int i = 0; i < keywordCount; i++) {
+					keywords.add(strings[data.getInt()]);
+				}
+				File image = new File(strings[data.getInt()]);
+				Rarity rarity = rarities[data.getInt()];
+				String pack = strings[data.getInt()];
+				cards.add(new Card(id, name, type, archetype, cost, power, health, channel, charges, slots, cardText,
+						textSize, keywords, image, rarity, pack));
+			}
+
+			int packCount = data.getInt();
+			Map<String, Map<Rarity, List<Card>>> packs = new HashMap<>(packCount * 2);
+			for (int p = 0; p < packCount; p++) {
+				Map<Rarity, List<Card>> pack = new EnumMap<>(Rarity.class);
+				packs.put(strings[data.getInt()], pack);
+				int poolCount = data.getInt();
+				for (int r = 0; r < poolCount; r++) {
+					Rarity rarity = rarities[data.getInt()];
+					int poolSize = data.getInt();
+					List<Card> pool = new ArrayList<>(poolSize);
+					for (int i = 0; i < poolSize; i++) {
+						pool.add(cards.get(data.getInt()));
+					}
+					pack.put(rarity, pool);
+				}
+			}
+
+			//The art isn't part of the snapshot, so look for it on every load, the same as parsing the JSON does.
+			cards.parallelStream().forEach(Card::checkImageExists);
+			Logger.tag(LTags.DB_INIT.tag).info("Loaded {} cards from snapshot {}.", cards.size(), file.getName());
+			return new CardSnapshot(cards, packs);
+		} catch (IOException | RuntimeException e) {
+			Logger.tag(LTags.DB_INIT.tag).warn(e, "Unable to read card snapshot {}, ignoring it.", file.getName());
+			return null;
+		}
+	}
+
+	private static CardField readField(ByteBuffer data, String[] strings) {
+		String string = strings[data.getInt()];
+		int value = data.getInt();
+		return value == Card.BLANK_INT && string.isEmpty() ? Card.BLANK_FIELD : new CardField(string, value);
+	}
+
+	private static int intern(Map<String, Integer> strings, String string) {
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.put(string, index);
+		}
+		return index;
+	}
+
+	private static void writeField(DataOutputStream out, Map<String, Integer> strings, CardField field) throws IOException {
+		out.writeInt(intern(strings, field.string));
+		out.writeInt(field.data);
+	}
+
+	/**
+	 Writes a snapshot of the cards and packs, replacing any existing one.
+	 @param file       The snapshot file.
+	 @param sourceHash The hash of the JSON the cards were loaded from.
+	 @param cards      The cards, in id order.
+	 @param packs      The pack pools built from the cards.
+	 */
+	static void write(File file, byte[] sourceHash, List<Card> cards, Map<String, Map<Rarity, List<Card>>> packs) {
+		//Cards go in their own buffer first, since the string table has to be written before them.
+		Map<String, Integer> strings = new LinkedHashMap<>(cards.size() * 4);
+		ByteArrayOutputStream body = new ByteArrayOutputStream(cards.size() * 96);
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeInt(cards.size());
+			for (Card card : cards) {
+				out.writeInt(intern(strings, card.name));
+				out.writeInt(intern(strings, card.type));
+				out.writeInt(card.archetype.ordinal());
+				out.writeInt(card.cost);
+				writeField(out, strings, card.power);
+				writeField(out, strings, card.health);
+				writeField(out, strings, card.channel);
+				writeField(out, strings, card.charges);
+				writeField(out, strings, card.slots);
+				out.writeInt(intern(strings, card.cardText));
+				out.writeInt(card.textSize);
+				out.writeInt(card.keywords.size());
+				for (String keyword : card.keywords) {
+					out.writeInt(intern(strings, keyword));
+				}
+				out.writeInt(intern(strings, card.image.getPath()));
+				out.writeInt(card.rarity.ordinal());
+				out.writeInt(intern(strings, card.pack));
+			}
+
+			out.writeInt(packs.size());
+			for (Map.Entry<String, Map<Rarity, List<Card>>> pack : packs.entrySet()) {
+				out.writeInt(intern(strings, pack.getKey()));
+				out.writeInt(pack.getValue().size());
+				for (Map.Entry<Rarity, List<Card>> pool : pack.getValue().entrySet()) {
+					out.writeInt(pool.getKey().ordinal());
+					out.writeInt(pool.getValue().size());
+					for (Card card : pool.getValue()) {
+						out.writeInt(card.id);
+					}
+				}
+			}
+			out.flush();
+
+			try (DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				fileOut.writeInt(MAGIC);
+				fileOut.writeInt(VERSION);
+				fileOut.writeInt(sourceHash.length);
+				fileOut.write(sourceHash);
+				fileOut.writeInt(strings.size());
+				for (String string : strings.keySet()) {
+					byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+					fileOut.writeInt(bytes.length);
+					fileOut.write(bytes);
+				}
+				body.writeTo(fileOut);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Logger.tag(LTags.DB_INIT.tag).info("Wrote card snapshot {}.", file.getName());
+		} catch (IOException e) {
+			Logger.tag(LTags.DB_INIT.tag).warn(e, "Unable to write card snapshot {}.", file.getAbsolutePath());
+			if (temp.exists() && !temp.delete()) {
+				Logger.tag(LTags.DB_INIT.tag).warn("Unable to remove {}.", temp.getAbsolutePath());
+			}
+		}
+	}
+}
@@ -5,116 +5,229 @@ import org.tinylog.Logger;
 
 import java.util.*;
 
+/**
+ Counts of cards by id, bounded by a maximum number of copies of each card and a maximum total size. Optionally bounded
+ by another collection too, so a deck can't hold more copies of a card than the trunk does.
+
+ Counts are stored in an open addressed int to int hash table with linear probing. Each slot is three ints in one array,
+ a stamp, the card id and the count, so a lookup usually touches a single cache line. A slot is only in use if its stamp
+ matches the current generation, which lets clear() empty the table by bumping the generation instead of wiping it.
+ Removals shift later entries back into the gap rather than leaving tombstones, so probe lengths don't creep up as cards
+ are added and removed.
+
+ Which cards have at least one copy is also kept as a bit set, so filters on what's in the collection can be combined
+ with other sets of cards a word at a time.
+
+ Card ids are dense indices, so once enough of them are in the collection, like a trunk holding every card, the counts
+ switch over to a plain array indexed by id. That's smaller than the table at that point, and lets bulk operations sweep
+ the array instead of hashing every card. Collections no bigger than the smallest table, like a 40 card deck, always
+ stay in the table.
+ */
 public class Deck {
+	private static final int SLOT_SIZE = 3;
+	private static final int STAMP = 0;
+	private static final int KEY = 1;
+	private static final int VALUE = 2;
+	private static final int MIN_CAPACITY = 64;
+	//Switch to an array once at least 1 in this many ids up to the highest one are in the collection.
+	private static final int DENSE_OCCUPANCY = 4;
+
 	private final int maxCopies;
 	private final int maxSize;
+	private final Deck boundingCollection;
+	//Whether the counts can switch to an array. Small collections never hold enough cards for it to pay off.
+	private final boolean allowDense;
 
 	private int size = 0;
 
-	private int hashedIndices = 0;
-	private static final double MIN_HASH_LOAD_FACTOR = 0.25;
-	private static final double IDEAL_HASH_LOAD_FACTOR = 0.5;
-	private static final double MAX_HASH_LOAD_FACTOR = 0.75;
-	private final int minHashSize;
-	private int[] cards;
-	private final Deck boundingCollection;
+	//Cards with at least one copy. In the table, these are the slots in use, kept at or below half the capacity.
+	private int entries = 0;
+	//Number of slots, always a power of two.
+	private int capacity;
+	//Bits needed to index a slot, for the hash.
+	private int indexBits;
+	private int[] table;
+	private int generation = 1;
+	//Highest id put in the table since it was last empty, to tell how full an array would be.
+	private int highestId = -1;
+	//Counts indexed by card id, used instead of the table once most ids are present. Null while using the table.
+	private int[] dense;
+	//Ids of the cards with at least one copy.
+	private final BitSet members = new BitSet();
 	private List<Card> cachedList;
 	private List<Card> cachedSet;
 
 	public Deck(int maxCopies, int maxSize) {
-		this.maxCopies = maxCopies;
-		this.maxSize = maxSize;
-		boundingCollection = null;
-		minHashSize = 40;
-		cards = new int[minHashSize];
-		Arrays.fill(cards, -1);
+		this(maxCopies, maxSize, null);
 	}
 
 	public Deck(int maxCopies, int maxSize, Deck boundingCollection) {
 		this.maxCopies = maxCopies;
 		this.maxSize = maxSize;
 		this.boundingCollection = boundingCollection;
-		minHashSize = 40;
-		cards = new int[minHashSize];
-		Arrays.fill(cards, -1);
-	}
-
-	private int hashGetIndex(int cardId) {
-		int cardHash = (cardId * 2) % cards.length; //Get hash using simple modulo technique.
-		while (true) {
-			int storedId = cards[cardHash];
-			if (storedId == cardId) { //Card is found.
-				return cardHash;
-			} else if (storedId == -1) { //Card is not found.
-				return -1;
-			} else { //Try next hash using linear probing.
-				cardHash = (cardHash + 2) % cards.length;
-			}
-		}
-	}
-
-	private void rehash() {
-		Logger.tag(LTags.DECK.tag).debug("Rehashing Card Table.");
-		int[] newCards = new int[Integer.max(minHashSize, (int) (hashedIndices * (1.0 / IDEAL_HASH_LOAD_FACTOR)))];
-		Arrays.fill(newCards, -1);
-		int[] oldCards = cards;
-		cards = newCards;
-		hashedIndices = 0;
-		if (size > 0) {
-			for (int i = 0; i < oldCards.length; i += 2) {
-				int cardId = oldCards[i];
-				int cardCount = oldCards[i + 1];
-				if (cardId != -1 && cardCount > 0) {
-					hashPutValue(cardId, cardCount, false);
-				}
+		allowDense = maxSize > MIN_CAPACITY;
+		allocate(MIN_CAPACITY);
+	}
+
+	private void allocate(int slots) {
+		capacity = slots;
+		indexBits = Integer.numberOfTrailingZeros(slots);
+		table = new int[slots * SLOT_SIZE];
+		generation = 1;
+	}
+
+	/**
+	 Fibonacci hashing. Spreads runs of sequential ids, which is what card ids are, evenly over the table.
+	 */
+	private int homeSlot(int cardId) {
+		return (cardId * 0x9E3779B9) >>> (32 - indexBits);
+	}
+
+	private boolean isUsed(int slot) {
+		return table[slot * SLOT_SIZE + STAMP] == generation;
+	}
+
+	/**
+	 Finds the slot holding a card.
+	 @return The slot, or -1 - the empty slot the card would go in if it isn't in the table.
+	 */
+	private int findSlot(int cardId) {
+		int mask = capacity - 1;
+		for (int slot = homeSlot(cardId); ; slot = (slot + 1) & mask) {
+			int index = slot * SLOT_SIZE;
+			if (table[index + STAMP] != generation) {
+				return -1 - slot;
+			} else if (table[index + KEY] == cardId) {
+				return slot;
 			}
 		}
 	}
 
-	private void hashPutValue(int cardId, int count, boolean canRehash) {
+	private static boolean fitsDense(int highestId, int entries) {
+		return (long) entries * DENSE_OCCUPANCY > highestId;
+	}
+
+	private void put(int cardId, int count) {
 		cachedList = null;
 		cachedSet = null;
-		int cardHash = (cardId * 2) % cards.length; //Get hash using simple modulo technique.
-		int origCardHash = cardHash;
-		while (true) {
-			int storedId = cards[cardHash];
-			int storedValue = cards[cardHash + 1];
-			if (storedId == cardId || storedValue == 0) { //An empty slot is found.
-				cards[cardHash] = cardId;
-				cards[cardHash + 1] = count;
-				if (count == 0) {
-					hashedIndices -= 2;
-				}
-				break;
-			} else if (storedId == -1) { //Card is not found.
-				cards[cardHash] = cardId;
-				cards[cardHash + 1] = count;
-				if (count != 0) {
-					hashedIndices += 2;
-				}
-				break;
-			} else { //Try next hash using linear probing.
-				cardHash = (cardHash + 2) % cards.length;
-				//If we have looped all the way around without finding a slot, rehash.
-				//Should never occur, but kept in defensively to prevent infinite loops.
-				if (cardHash == origCardHash) {
-					if (canRehash) {
-						RuntimeException e = new RuntimeException("Attempted to rehash Card Collection while in the process of transfering data for another rehash.");
-						Logger.tag(LTags.DECK.tag).error(e);
-						throw e;
-					}
-					rehash();
-					cardHash = (2 * cardId) % cards.length; //Get hash using simple modulo technique.
-					origCardHash = cardHash;
+		//Don't stretch the array out to cover a far off id, the table copes with that better.
+		if (dense != null && cardId >= dense.length && count > 0 && !fitsDense(cardId, entries + 1)) {
+			toTable();
+		}
+		if (dense != null) {
+			putDense(cardId, count);
+			return;
+		}
+
+		int slot = findSlot(cardId);
+		if (slot >= 0) {
+			if (count > 0) {
+				table[slot * SLOT_SIZE + VALUE] = count;
+			} else {
+				remove(slot);
+				members.clear(cardId);
+			}
+		} else if (count > 0) {
+			members.set(cardId);
+			slot = -1 - slot;
+			int index = slot * SLOT_SIZE;
+			table[index + STAMP] = generation;
+			table[index + KEY] = cardId;
+			table[index + VALUE] = count;
+			entries++;
+			highestId = Integer.max(highestId, cardId);
+			if (entries * 2 > capacity) {
+				if (allowDense && cardId >= 0 && fitsDense(highestId, entries)) {
+					toDense(highestId + 1);
+				} else {
+					resize(capacity * 2);
 				}
 			}
 		}
+	}
+
+	private void putDense(int cardId, int count) {
+		if (cardId >= dense.length) {
+			if (count <= 0) {
+				return;
+			}
+			dense = Arrays.copyOf(dense, Integer.max(cardId + 1, dense.length * 2));
+		}
+
+		int previous = dense[cardId];
+		dense[cardId] = count;
+		if (previous == 0 && count > 0) {
+			entries++;
+			members.set(cardId);
+		} else if (previous > 0 && count == 0) {
+			entries--;
+			members.clear(cardId);
+		}
+	}
+
+	/**
+	 Moves the counts from the table into an array.
+	 @param length The length of the array, covering at least every id in the table.
+	 */
+	private void toDense(int length) {
+		Logger.tag(LTags.DECK.tag).debug("Switching card table with {} cards to an array of {}.", entries, length);
+		int[] counts = new int[length];
+		for (int index = 0; index < table.length; index += SLOT_SIZE) {
+			if (table[index + STAMP] == generation) {
+				counts[table[index + KEY]] = table[index + VALUE];
+			}
+		}
+		dense = counts;
+		table = null;
+	}
+
+	private void toTable() {
+		Logger.tag(LTags.DECK.tag).debug("Switching card array with {} cards back to a table.", entries);
+		int[] counts = dense;
+		dense = null;
+		allocate(Integer.max(MIN_CAPACITY, Integer.highestOneBit(entries) * 4));
+		entries = 0;
+		highestId = -1;
+		for (int cardId = 0; cardId < counts.length; cardId++) {
+			if (counts[cardId] > 0) {
+				put(cardId, counts[cardId]);
+			}
+		}
+	}
+
+	/**
+	 Empties a slot, then walks the rest of its probe run moving back any entry that can sit in the gap, so lookups never
+	 stop early on a hole that used to be part of their run.
+	 */
+	private void remove(int slot) {
+		int mask = capacity - 1;
+		int gap = slot;
+		for (int next = (gap + 1) & mask; isUsed(next); next = (next + 1) & mask) {
+			int home = homeSlot(table[next * SLOT_SIZE + KEY]);
+			//The entry can move back if its home slot isn't in the cyclic range (gap, next].
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				System.arraycopy(table, next * SLOT_SIZE, table, gap * SLOT_SIZE, SLOT_SIZE);
+				gap = next;
+			}
+		}
+		table[gap * SLOT_SIZE + STAMP] = 0;
+		entries--;
+	}
 
-		if (canRehash) {
-			double loadFactor = (double) (hashedIndices) / (double) cards.length;
-			double loadFloor = ((double) (minHashSize)) * IDEAL_HASH_LOAD_FACTOR;
-			if (hashedIndices >= loadFloor && (loadFactor > MAX_HASH_LOAD_FACTOR || loadFactor < MIN_HASH_LOAD_FACTOR)) {
-				rehash();
+	private void resize(int slots) {
+		Logger.tag(LTags.DECK.tag).debug("Resizing card table to {} slots.", slots);
+		int[] oldTable = table;
+		int oldGeneration = generation;
+		allocate(slots);
+		int mask = capacity - 1;
+		for (int index = 0; index < oldTable.length; index += SLOT_SIZE) {
+			if (oldTable[index + STAMP] == oldGeneration) {
+				int slot = homeSlot(oldTable[index + KEY]);
+				while (isUsed(slot)) {
+					slot = (slot + 1) & mask;
+				}
+				System.arraycopy(oldTable, index, table, slot * SLOT_SIZE, SLOT_SIZE);
+				table[slot * SLOT_SIZE + STAMP] = generation;
 			}
 		}
 	}
@@ -132,17 +245,17 @@ public class Deck {
 		if (nextSize >= 0 && nextSize <= maxSize) {
 			int maxForCard = maxCopies(cardId);
 			if (count > 0 && count <= maxForCard) {
-				hashPutValue(cardId, count, true);
+				put(cardId, count);
 				size = nextSize;
 				Logger.tag(LTags.DECK.tag).info("Set card count for card #{} to {} copies.", cardId, count);
 				return CardCount.SOME;
 			} else if (count == maxForCard) {
-				hashPutValue(cardId, count, true);
+				put(cardId, count);
 				size = nextSize;
 				Logger.tag(LTags.DECK.tag).info("Set card count for card #{} to max {} copies.", cardId, count);
 				return CardCount.MAX;
 			} else if (count <= 0) {
-				hashPutValue(cardId, count, true);
+				put(cardId, 0);
 				size = nextSize;
 				Logger.tag(LTags.DECK.tag).info("Removed card #{} from collection.", cardId);
 				return CardCount.NONE;
@@ -155,19 +268,92 @@ public class Deck {
 		return CardCount.INVALID;
 	}
 
-	public void clear() {
-		if (cards.length * 2 > ((double) minHashSize) / MIN_HASH_LOAD_FACTOR) {
-			cards = new int[minHashSize];
+	/**
+	 Sets every card with an id below cardCount to the given number of copies, skipping any card or copy the limits on the
+	 collection don't allow, the same as calling setCopies for each card in id order.
+	 @param cardCount The number of cards to fill.
+	 @param copies    The number of copies of each card.
+	 */
+	public void fillAll(int cardCount, int copies) {
+		cachedList = null;
+		cachedSet = null;
+		if (allowDense) {
+			if (dense == null) {
+				toDense(Integer.max(cardCount, highestId + 1));
+			} else if (dense.length < cardCount) {
+				dense = Arrays.copyOf(dense, cardCount);
+			}
 		}
-		Arrays.fill(cards, -1);
+
+		int target = Integer.max(copies, 0);
+		int filled = 0;
+		for (int cardId = 0; cardId < cardCount; cardId++) {
+			long nextSize = (long) size + target - getCopies(cardId);
+			if (target > maxCopies(cardId) || nextSize > maxSize) {
+				continue;
+			}
+			if (dense != null) {
+				putDense(cardId, target);
+			} else {
+				put(cardId, target);
+			}
+			size = (int) nextSize;
+			filled++;
+		}
+		Logger.tag(LTags.DECK.tag).info("Set {} of {} cards to {} copies.", filled, cardCount, copies);
+	}
+
+	/**
+	 Adds a copy of each card in order, stopping at the first one the limits on the collection don't allow. A card can
+	 be listed more than once to add more than one copy of it.
+	 @param cardIds The cards to add.
+	 @return The number of cards from the start of the list that were added.
+	 */
+	public int addMany(int[] cardIds) {
+		for (int i = 0; i < cardIds.length; i++) {
+			int cardId = cardIds[i];
+			int copies = getCopies(cardId) + 1;
+			if (size == maxSize || copies > maxCopies(cardId)) {
+				Logger.tag(LTags.DECK.tag).info("Added {} of {} cards, cannot add another copy of card #{}.", i, cardIds.length, cardId);
+				return i;
+			}
+			put(cardId, copies);
+			size++;
+		}
+		Logger.tag(LTags.DECK.tag).info("Added {} cards.", cardIds.length);
+		return cardIds.length;
+	}
+
+	/**
+	 Removes every card. Doesn't touch the table unless the generation counter runs out, which takes billions of clears.
+	 */
+	public void clear() {
+		cachedList = null;
+		cachedSet = null;
 		size = 0;
-		hashedIndices = 0;
+		entries = 0;
+		highestId = -1;
+		members.clear();
+		if (dense != null) {
+			dense = null;
+			allocate(MIN_CAPACITY);
+			return;
+		}
+		if (generation == Integer.MAX_VALUE) {
+			Arrays.fill(table, 0);
+			generation = 0;
+		}
+		generation++;
 	}
 
 	public int getCopies(int cardId) {
-		int index = hashGetIndex(cardId);
-		if (index != -1) {
-			return cards[index + 1];
+		if (dense != null) {
+			return cardId >= 0 && cardId < dense.length ? dense[cardId] : 0;
+		}
+
+		int slot = findSlot(cardId);
+		if (slot >= 0) {
+			return table[slot * SLOT_SIZE + VALUE];
 		}
 
 		return 0;
@@ -190,17 +376,45 @@ public class Deck {
 		return size;
 	}
 
+	/**
+	 Returns the ids of the cards with at least one copy.
+	 @return A copy of the set, which is safe to modify.
+	 */
+	public BitSet getMembers() {
+		return (BitSet) members.clone();
+	}
+
+	/**
+	 Returns the ids of the cards with at least one copy, in id order so lists and saved decks come out in a stable order.
+	 */
+	private int[] getSortedIds() {
+		int[] ids = new int[entries];
+		int count = 0;
+		if (dense != null) {
+			for (int cardId = 0; cardId < dense.length; cardId++) {
+				if (dense[cardId] > 0) {
+					ids[count++] = cardId;
+				}
+			}
+			return ids;
+		}
+
+		for (int index = 0; index < table.length; index += SLOT_SIZE) {
+			if (table[index + STAMP] == generation) {
+				ids[count++] = table[index + KEY];
+			}
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
 	public List<Card> getCardList() {
 		if (cachedList == null) {
 			List<Card> collectionList = new ArrayList<>(size);
-			for (int i = 0; i < cards.length; i += 2) {
-				int cardId = cards[i];
-				int cardCount = cards[i+1];
-				if (cardId != -1 && cardCount > 0) {
-					Card card = CardDatabase.getCard(cardId);
-					for (int copy = 0; copy < cardCount; copy++) {
-						collectionList.add(card);
-					}
+			for (int cardId : getSortedIds()) {
+				Card card = CardDatabase.getCard(cardId);
+				for (int copy = getCopies(cardId); copy > 0; copy--) {
+					collectionList.add(card);
 				}
 			}
 			cachedList = Collections.unmodifiableList(collectionList);
@@ -211,13 +425,9 @@ public class Deck {
 
 	public List<Card> getCardSet(){
 		if (cachedSet == null) {
-			List<Card> collectionList = new ArrayList<>(size);
-			for (int i = 0; i < cards.length; i += 2) {
-				int cardId = cards[i];
-				int cardCount = cards[i + 1];
-				if (cardId != -1 && cardCount > 0) {
-					collectionList.add(CardDatabase.getCard(cardId));
-				}
+			List<Card> collectionList = new ArrayList<>(entries);
+			for (int cardId : getSortedIds()) {
+				collectionList.add(CardDatabase.getCard(cardId));
 			}
 			cachedSet = Collections.unmodifiableList(collectionList);
 		}
@@ -0,0 +1,174 @@
+package database.card;
+
+import java.util.*;
+
+/**
+ Inverted index from each run of three characters to the cards whose text contains it. A card can only contain a string
+ if it contains every trigram of that string, so intersecting their lists gives a small set of candidates to check instead
+ of every card. Text should be lowercased before it's added or looked up.
+ */
+class TrigramIndex {
+	private final int cardCount;
+	private final Map<Long, IdList> postings = new HashMap<>();
+
+	private static class IdList {
+		private int[] ids = new int[4];
+		private int size = 0;
+
+		private void add(int id) {
+			//Cards are added in id order, so a repeat of a trigram in the same card is always at the end.
+			if (size > 0 && ids[size - 1] == id) {
+				return;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+
+	TrigramIndex(int cardCount) {
+		this.cardCount = cardCount;
+	}
+
+	private static long trigram(CharSequence text, int start) {
+		return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+	}
+
+	/**
+	 Adds text for a card. Cards have to be added in id order, though a card can have more than one piece of text added.
+	 */
+	void add(int cardId, String text) {
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			postings.computeIfAbsent(trigram(text, i), (t) -> new IdList()).add(cardId);
+		}
+	}
+
+	/**
+	 Finds the cards that could contain all of the given strings.
+	 @param literals Strings that all have to be in the text.
+	 @return A superset of the cards containing all of them, or null if none are long enough to narrow anything down.
+	 */
+	BitSet candidates(Collection<String> literals) {
+		List<IdList> lists = new ArrayList<>();
+		for (String literal : literals) {
+			for (int i = 0; i + 3 <= literal.length(); i++) {
+				IdList list = postings.get(trigram(literal, i));
+				if (list == null) {
+					return new BitSet();
+				}
+				lists.add(list);
+			}
+		}
+		if (lists.isEmpty()) {
+			return null;
+		}
+
+		//Start from the rarest trigram, so the candidate list only shrinks from there.
+		lists.sort(Comparator.comparingInt((list) -> list.size));
+		int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+		int count = candidates.length;
+		for (int i = 1; i < lists.size() && count > 0; i++) {
+			count = intersect(candidates, count, lists.get(i));
+		}
+
+		BitSet result = new BitSet(cardCount);
+		for (int i = 0; i < count; i++) {
+			result.set(candidates[i]);
+		}
+		return result;
+	}
+
+	/**
+	 Keeps the ids in candidates that are also in list, in place.
+	 @return The number of ids kept.
+	 */
+	private static int intersect(int[] candidates, int count, IdList list) {
+		int kept = 0;
+		int from = 0;
+		for (int i = 0; i < count; i++) {
+			int index = Arrays.binarySearch(list.ids, from, list.size, candidates[i]);
+			if (index >= 0) {
+				candidates[kept++] = candidates[i];
+				from = index + 1;
+			} else {
+				from = -index - 1;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 Pulls out runs of plain characters that any match of a regex has to contain. Only handles the simple cases, and gives
+	 up on anything it can't be sure about, since missing a literal just means checking more cards.
+	 @param regex The regex.
+	 @return The literal runs, which may be empty if nothing could be worked out.
+	 */
+	static List<String> requiredLiterals(String regex) {
+		List<String> literals = new ArrayList<>();
+		//Alternatives mean no single run is required, and inline flags like comments mode change what runs mean.
+		if (regex.indexOf('|') >= 0 || regex.contains("(?")) {
+			return literals;
+		}
+
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				char escaped = i + 1 < regex.length() ? regex.charAt(++i) : '\\';
+				if (depth == 0 && !Character.isLetterOrDigit(escaped)) {
+					run.append(escaped);
+				} else {
+					endRun(run, literals);
+				}
+			} else if (c == '?' || c == '*' || c == '{') {
+				//The character before is optional, so it can't be part of the run.
+				if (run.length() > 0) {
+					run.setLength(run.length() - 1);
+				}
+				endRun(run, literals);
+				if (c == '{') {
+					while (i < regex.length() && regex.charAt(i) != '}') {
+						i++;
+					}
+				}
+			} else if (c == '[') {
+				endRun(run, literals);
+				//Skip the class, taking care over a leading ] and escapes inside it.
+				i++;
+				if (i < regex.length() && regex.charAt(i) == '^') {
+					i++;
+				}
+				if (i < regex.length() && regex.charAt(i) == ']') {
+					i++;
+				}
+				while (i < regex.length() && regex.charAt(i) != ']') {
+					if (regex.charAt(i) == '\\') {
+						i++;
+					}
+					i++;
+				}
+			} else if (c == '(') {
+				endRun(run, literals);
+				depth++;
+			} else if (c == ')') {
+				depth = Integer.max(0, depth - 1);
+			} else if (c == '.' || c == '^' || c == '$' || c == '+') {
+				//A + keeps the character before it, but anything after it could be another copy of that character.
+				endRun(run, literals);
+			} else if (depth == 0) {
+				run.append(c);
+			}
+		}
+		endRun(run, literals);
+		return literals;
+	}
+
+	private static void endRun(StringBuilder run, List<String> literals) {
+		if (run.length() >= 3) {
+			literals.add(run.toString());
+		}
+		run.setLength(0);
+	}
+}
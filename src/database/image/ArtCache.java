@@ -0,0 +1,119 @@
+package database.image;
+
+import application.LTags;
+import org.tinylog.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ Shared cache of decoded card art, already scaled down to the art box. Decoding and scaling the full size art is the most
+ expensive part of generating a card, so it is done once per file on a pool of loaders, and repeated requests for art
+ that is still loading wait on the same load. Entries are keyed by path and go stale when the file is modified.
+ */
+class ArtCache {
+	private ArtCache() {}
+
+	private static final ImageCache<String> cache = new ImageCache<>("Card art", ImgConstants.CARD_ART_CACHE_BYTES);
+	private static final Map<String, Future<BufferedImage>> loading = new ConcurrentHashMap<>();
+	private static final ExecutorService loaderPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), ImgStore.namedThreads("Card Art Loader"));
+
+	private static long getVersion(File art) {
+		return 31 * art.lastModified() + art.length();
+	}
+
+	/**
+	 Starts loading a piece of art if it isn't cached or already loading.
+	 @param art The art file.
+	 @return The art scaled to the art box, or null once loaded if it couldn't be read.
+	 */
+	static Future<BufferedImage> load(File art) {
+		String key = art.getAbsolutePath();
+		long version = getVersion(art);
+		BufferedImage cached = cache.get(key, version);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		FutureTask<BufferedImage> task = new FutureTask<>(() -> decode(art, key, version));
+		Future<BufferedImage> existing = loading.putIfAbsent(key, task);
+		if (existing != null) {
+			return existing;
+		}
+		loaderPool.execute(() -> {
+			try {
+				task.run();
+			} finally {
+				loading.remove(key, task);
+			}
+		});
+		return task;
+	}
+
+	/**
+	 Gets a piece of art, waiting for it to load if needed. Being interrupted stops the wait but not the load, so the art
+	 still ends up cached for next time.
+	 @param art The art file.
+	 @return The art scaled to the art box, or null if it couldn't be read.
+	 @throws InterruptedException If the thread was interrupted while waiting.
+	 */
+	static BufferedImage get(File art) throws InterruptedException {
+		try {
+			return load(art).get();
+		} catch (ExecutionException e) {
+			Logger.tag(LTags.IMG_LOAD.tag).warn(e.getCause(), "Unable to load card art {}.", art.getAbsolutePath());
+			return null;
+		}
+	}
+
+	static void clear() {
+		cache.clear();
+	}
+
+	private static BufferedImage decode(File art, String key, long version) throws IOException {
+		BufferedImage source = ImageIO.read(art);
+		if (source == null) {
+			throw new IOException("No reader for the format of " + art.getName());
+		}
+
+		BufferedImage scaled = scale(source);
+		cache.put(key, version, scaled);
+		Logger.tag(LTags.IMG_LOAD.tag).debug("Loaded card art {} ({}x{}).", art.getName(), source.getWidth(), source.getHeight());
+		return scaled;
+	}
+
+	/**
+	 Scales art to the art box in the same layout as generated cards, so drawing it is a plain copy. Large art is halved
+	 repeatedly first, since a single big bicubic step only samples a few source pixels per output pixel and aliases.
+	 */
+	private static BufferedImage scale(BufferedImage source) {
+		final int width = ImgGenerator.ART_BOX.width;
+		final int height = ImgGenerator.ART_BOX.height;
+		BufferedImage current = source;
+		int currentWidth = source.getWidth();
+		int currentHeight = source.getHeight();
+		while (currentWidth / 2 >= width && currentHeight / 2 >= height) {
+			currentWidth /= 2;
+			currentHeight /= 2;
+			current = resize(current, currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		}
+		return resize(current, width, height, BufferedImage.TYPE_3BYTE_BGR, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+	}
+
+	private static BufferedImage resize(BufferedImage source, int width, int height, int type, Object interpolation) {
+		//Transparent parts of the art end up black, same as drawing it straight onto a new card.
+		BufferedImage resized = new BufferedImage(width, height, type);
+		Graphics2D canvas = resized.createGraphics();
+		canvas.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+		canvas.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		canvas.drawImage(source, 0, 0, width, height, null);
+		canvas.dispose();
+		return resized;
+	}
+}
@@ -0,0 +1,138 @@
+package database.image;
+
+import gui.UIConstants;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ Pre-scaled copies of a card image, starting at the preview size and halving from there, so the GUI never has to scale
+ a full size card while painting. All the levels for a card are packed into one image, the first level on the left and
+ the rest stacked to the right of it, so a card's thumbnails are a single cache entry.
+
+ Levels are sized in device pixels for the screen the app started on, so they still look sharp on high DPI displays.
+ */
+class CardThumbnails {
+	private CardThumbnails() {}
+
+	static final int LEVEL_COUNT = 3;
+	//Where each level is in the packed image, largest first. Sized in device pixels.
+	private static final Rectangle[] levelBounds = new Rectangle[LEVEL_COUNT];
+	private static final int atlasWidth;
+	private static final int atlasHeight;
+
+	static {
+		double scale = getDisplayScale();
+		int x = 0;
+		int y = 0;
+		for (int level = 0; level < LEVEL_COUNT; level++) {
+			//Never go bigger than the card itself, there's no detail to gain from it.
+			int width = Integer.min(ImgConstants.CARD_SIZE_X >> level, (int) Math.round((UIConstants.CARD_IMAGE_SIZE.width >> level) * scale));
+			int height = Integer.min(ImgConstants.CARD_SIZE_Y >> level, (int) Math.round((UIConstants.CARD_IMAGE_SIZE.height >> level) * scale));
+			levelBounds[level] = new Rectangle(x, y, width, height);
+			if (level == 0) {
+				x = width;
+			} else {
+				y += height;
+			}
+		}
+		atlasWidth = levelBounds[0].width + (LEVEL_COUNT > 1 ? levelBounds[1].width : 0);
+		atlasHeight = levelBounds[0].height;
+	}
+
+	private static double getDisplayScale() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return 1;
+		}
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().getDefaultTransform().getScaleX();
+	}
+
+	/**
+	 Scales a card image down into every level. Each level is scaled from the one above it, so no step shrinks by more
+	 than half and a single bicubic pass per level keeps the quality up.
+	 @param card The full size card image.
+	 @return The packed levels.
+	 */
+	static BufferedImage build(BufferedImage card) {
+		BufferedImage atlas = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D canvas = atlas.createGraphics();
+		canvas.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		canvas.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		Image source = card;
+		for (Rectangle bounds : levelBounds) {
+			canvas.drawImage(source, bounds.x, bounds.y, bounds.width, bounds.height, null);
+			source = atlas.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height);
+		}
+		canvas.dispose();
+		return atlas;
+	}
+
+	/**
+	 Makes an icon that paints a card from its thumbnails.
+	 @param atlas The packed levels from build.
+	 @param size  The size to show the card at. The levels are picked from to match it at paint time.
+	 @return The icon.
+	 */
+	static ImageIcon createIcon(BufferedImage atlas, Dimension size) {
+		BufferedImage[] levels = new BufferedImage[LEVEL_COUNT];
+		for (int level = 0; level < LEVEL_COUNT; level++) {
+			Rectangle bounds = levelBounds[level];
+			levels[level] = atlas.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height);
+		}
+		return new ThumbnailIcon(levels, size);
+	}
+
+	/**
+	 Icon that paints from the smallest level that still covers the area it's painted to in device pixels. When that
+	 level is an exact fit, which it is at the sizes the levels were made for, painting is a straight copy.
+	 */
+	private static class ThumbnailIcon extends ImageIcon {
+		private final BufferedImage[] levels;
+		private final int width;
+		private final int height;
+
+		private ThumbnailIcon(BufferedImage[] levels, Dimension size) {
+			super(levels[0]);
+			this.levels = levels;
+			width = size.width;
+			height = size.height;
+		}
+
+		@Override
+		public int getIconWidth() {
+			return width;
+		}
+
+		@Override
+		public int getIconHeight() {
+			return height;
+		}
+
+		@Override
+		public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+			Graphics2D g2 = (Graphics2D) g;
+			int deviceWidth = (int) Math.round(width * g2.getTransform().getScaleX());
+			BufferedImage level = levels[0];
+			for (int i = levels.length - 1; i >= 0; i--) {
+				if (levels[i].getWidth() >= deviceWidth) {
+					level = levels[i];
+					break;
+				}
+			}
+
+			if (level.getWidth() == deviceWidth) {
+				g2.drawImage(level, x, y, width, height, null);
+			} else {
+				//Off size, like a window dragged to a screen with a different scale. Cheap filtering is plenty when
+				//scaling from the nearest level.
+				Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+				g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g2.drawImage(level, x, y, width, height, null);
+				if (interpolation != null) {
+					g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+				}
+			}
+		}
+	}
+}
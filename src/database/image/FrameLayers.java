@@ -0,0 +1,139 @@
+package database.image;
+
+import application.LTags;
+import org.tinylog.Logger;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The static layers of the card frame, converted once into layouts that are cheap to draw. The frame is composited onto
+ the blank card ahead of time as an opaque base, so each card starts with a plain copy. Since the frame also sits over
+ the art, the parts of it that overlap the art box are kept as tiles and only those get drawn again over the art.
+ */
+class FrameLayers {
+	private FrameLayers() {}
+
+	private static final int TILE_SIZE = 16;
+
+	//The frame drawn over a blank card.
+	private static final BufferedImage base;
+	//Pieces of the frame that aren't fully transparent over the art box, and where they go.
+	private static final BufferedImage[] artTiles;
+	private static final Point[] artTilePositions;
+	//Drawn after the card text. If the border leaves the stats box alone, it's merged into the stats shadow.
+	private static final BufferedImage statsOverlay;
+	private static final BufferedImage border;
+	private static final boolean borderInStatsOverlay;
+
+	static {
+		BufferedImage frame = toCardLayer(ImgStore.getLocalImage("images/cardframes.png"));
+		base = new BufferedImage(ImgConstants.CARD_SIZE_X, ImgConstants.CARD_SIZE_Y, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D canvas = base.createGraphics();
+		canvas.drawImage(frame, 0, 0, null);
+		canvas.dispose();
+
+		List<BufferedImage> tiles = new ArrayList<>();
+		List<Point> positions = new ArrayList<>();
+		Rectangle artBox = ImgGenerator.ART_BOX;
+		for (int tileY = artBox.y; tileY < artBox.y + artBox.height; tileY += TILE_SIZE) {
+			int tileHeight = Integer.min(TILE_SIZE, artBox.y + artBox.height - tileY);
+			int runStart = -1;
+			//Merge runs of covered tiles along each row so there are fewer, wider draws.
+			for (int tileX = artBox.x; tileX < artBox.x + artBox.width; tileX += TILE_SIZE) {
+				int tileWidth = Integer.min(TILE_SIZE, artBox.x + artBox.width - tileX);
+				boolean covered = !isTransparent(frame, new Rectangle(tileX, tileY, tileWidth, tileHeight));
+				if (covered && runStart == -1) {
+					runStart = tileX;
+				} else if (!covered && runStart != -1) {
+					tiles.add(frame.getSubimage(runStart, tileY, tileX - runStart, tileHeight));
+					positions.add(new Point(runStart, tileY));
+					runStart = -1;
+				}
+			}
+			if (runStart != -1) {
+				tiles.add(frame.getSubimage(runStart, tileY, artBox.x + artBox.width - runStart, tileHeight));
+				positions.add(new Point(runStart, tileY));
+			}
+		}
+		artTiles = tiles.toArray(new BufferedImage[0]);
+		artTilePositions = positions.toArray(new Point[0]);
+
+		border = toCardLayer(ImgStore.getLocalImage("images/cardborder.png"));
+		borderInStatsOverlay = isTransparent(border, ImgGenerator.STATS_BOX);
+		statsOverlay = toCardLayer(ImgStore.getLocalImage("images/cardstatshadow.png"));
+		if (borderInStatsOverlay) {
+			canvas = statsOverlay.createGraphics();
+			canvas.drawImage(border, 0, 0, null);
+			canvas.dispose();
+		}
+		Logger.tag(LTags.IMG_GEN.tag).info("Built card frame layers, {} frame tiles over the art, border {} stats shadow.",
+				artTiles.length, borderInStatsOverlay ? "merged into" : "separate from");
+	}
+
+	/**
+	 Builds the layers if they haven't been already. They're built on first use anyway, this just gets it out of the way
+	 before cards start being rendered in parallel.
+	 */
+	static void load() {
+		//The static initializer does all the work.
+	}
+
+	/**
+	 Converts a frame image to a card sized, premultiplied image, which is the fastest kind to composite.
+	 */
+	private static BufferedImage toCardLayer(BufferedImage image) {
+		BufferedImage layer = new BufferedImage(ImgConstants.CARD_SIZE_X, ImgConstants.CARD_SIZE_Y, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D canvas = layer.createGraphics();
+		canvas.setComposite(AlphaComposite.Src);
+		canvas.drawImage(image, 0, 0, ImgConstants.CARD_SIZE_X, ImgConstants.CARD_SIZE_Y, null);
+		canvas.dispose();
+		return layer;
+	}
+
+	private static boolean isTransparent(BufferedImage layer, Rectangle area) {
+		for (int y = area.y; y < area.y + area.height; y++) {
+			for (int x = area.x; x < area.x + area.width; x++) {
+				if ((layer.getRGB(x, y) >>> 24) != 0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 Draws the frame over a blank card. Anything drawn before this would be covered up, so this goes first.
+	 */
+	static void drawBase(Graphics2D canvas) {
+		canvas.drawImage(base, 0, 0, null);
+	}
+
+	/**
+	 Draws the parts of the frame that sit over the art box, after the art has been drawn.
+	 */
+	static void drawOverArt(Graphics2D canvas) {
+		for (int i = 0; i < artTiles.length; i++) {
+			canvas.drawImage(artTiles[i], artTilePositions[i].x, artTilePositions[i].y, null);
+		}
+	}
+
+	/**
+	 Draws the stats shadow, and the border too if it can go on before the stats text.
+	 */
+	static void drawStatsOverlay(Graphics2D canvas) {
+		canvas.drawImage(statsOverlay, 0, 0, null);
+	}
+
+	/**
+	 Draws the border, unless it was already drawn along with the stats shadow.
+	 @param withStats Whether drawStatsOverlay was called for this card.
+	 */
+	static void drawBorder(Graphics2D canvas, boolean withStats) {
+		if (!withStats || !borderInStatsOverlay) {
+			canvas.drawImage(border, 0, 0, null);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package database.image;
+
+import application.LTags;
+import org.tinylog.Logger;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ Memory bounded LRU cache of images. Each entry carries a version number (content hash, mtime, etc.), and a lookup with a
+ different version than the stored one counts as a miss.
+ @param <K> The key type.
+ */
+class ImageCache<K> {
+	private final String name;
+	private final Map<K, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private long capacityBytes;
+	private long sizeBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	private static class Entry {
+		private final long version;
+		private final BufferedImage image;
+		private final long bytes;
+
+		private Entry(long version, BufferedImage image) {
+			this.version = version;
+			this.image = image;
+			this.bytes = sizeOf(image);
+		}
+	}
+
+	ImageCache(String name, long capacityBytes) {
+		this.name = name;
+		this.capacityBytes = capacityBytes;
+	}
+
+	/**
+	 Approximates the amount of memory used by the pixel data of an image.
+	 @param image The image to measure.
+	 @return The size of the image's backing buffer in bytes.
+	 */
+	static long sizeOf(BufferedImage image) {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	synchronized BufferedImage get(K key, long version) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.version == version) {
+			hits++;
+			return entry.image;
+		}
+
+		if (entry != null) { //Stale, so drop it now instead of waiting for it to age out.
+			entries.remove(key);
+			sizeBytes -= entry.bytes;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 Checks for an up to date entry without counting towards the hit/miss stats.
+	 */
+	synchronized boolean contains(K key, long version) {
+		Entry entry = entries.get(key);
+		return entry != null && entry.version == version;
+	}
+
+	synchronized void put(K key, long version, BufferedImage image) {
+		Entry entry = new Entry(version, image);
+		if (entry.bytes > capacityBytes) {
+			Logger.tag(LTags.IMG_LOAD.tag).debug("Not caching {} in {} cache, since it is larger than the whole cache.", key, name);
+			return;
+		}
+
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			sizeBytes -= previous.bytes;
+		}
+		sizeBytes += entry.bytes;
+		trim();
+	}
+
+	synchronized void invalidate(K key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			sizeBytes -= entry.bytes;
+		}
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		sizeBytes = 0;
+	}
+
+	synchronized void setCapacity(long capacityBytes) {
+		this.capacityBytes = capacityBytes;
+		trim();
+	}
+
+	private void trim() {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (sizeBytes > capacityBytes && eldest.hasNext()) {
+			sizeBytes -= eldest.next().bytes;
+			eldest.remove();
+			evictions++;
+		}
+		Logger.tag(LTags.IMG_LOAD.tag).debug("{} cache: {} entries, {}/{} bytes, {} hits, {} misses, {} evictions.",
+				name, entries.size(), sizeBytes, capacityBytes, hits, misses, evictions);
+	}
+
+	synchronized long getHits() {
+		return hits;
+	}
+
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+	synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+}
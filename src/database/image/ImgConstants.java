@@ -6,4 +6,9 @@ public class ImgConstants {
 	//Card Image Constants
 	static final int CARD_SIZE_X = 480;
 	static final int CARD_SIZE_Y = 680;
+
+	//Cache Constants
+	static final long CARD_IMAGE_CACHE_BYTES = Long.getLong("cardgenerator.cardImageCacheBytes", 96L * 1024 * 1024);
+	static final long CARD_THUMBNAIL_CACHE_BYTES = Long.getLong("cardgenerator.cardThumbnailCacheBytes", 48L * 1024 * 1024);
+	static final long CARD_ART_CACHE_BYTES = Long.getLong("cardgenerator.cardArtCacheBytes", 64L * 1024 * 1024);
 }
@@ -1,8 +1,11 @@
 package database.image;
 
 import application.LTags;
+import application.TaskScheduler;
+import application.TaskScheduler.Lane;
+import application.TaskScheduler.Task;
 import ar.com.hjg.pngj.ImageInfo;
-import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.ImageLineByte;
 import ar.com.hjg.pngj.PngWriter;
 import database.card.Card;
 import gui.UIConstants;
@@ -12,20 +15,35 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ImgStore {
 	private ImgStore() {}
 	public static final String CARD_IMAGE_PATH = "images/";
-	private static final Map<String, BufferedImage> cachedLocalImages = new HashMap<>(10);
+	private static final Map<String, BufferedImage> cachedLocalImages = new ConcurrentHashMap<>(10);
+	static final int DECK_COUNT_X = 10;
+	private static final int DECK_SIZE_X = ImgConstants.CARD_SIZE_X * DECK_COUNT_X;
+	private static final int DECK_COUNT_Y = 7;
+	private static final int DECK_SIZE_Y = ImgConstants.CARD_SIZE_Y * DECK_COUNT_Y;
+	private static final int RENDER_THREADS = Runtime.getRuntime().availableProcessors();
+	private static final int MAX_PAGES_IN_FLIGHT = 2;
+	private static final ImageCache<String> cardImageCache = new ImageCache<>("Card image", ImgConstants.CARD_IMAGE_CACHE_BYTES);
+	private static final ImageCache<String> thumbnailCache = new ImageCache<>("Card thumbnail", ImgConstants.CARD_THUMBNAIL_CACHE_BYTES);
+	//Speculative renders for cards near the selection, by card name.
+	private static final Map<String, Task<?>> prefetches = new ConcurrentHashMap<>();
+	//Card versions, worked out when cards are loaded so painting never has to look at the art file. Weak, since cards
+	//are replaced on reload.
+	private static final Map<Card, Long> cardVersions = Collections.synchronizedMap(new WeakHashMap<>());
 
 	/**
 	 * Returns a BufferedImage from the jar file based on the provided path.
@@ -34,24 +52,21 @@ public class ImgStore {
 	 * @return A BufferedImage corresponding to the image from the path.
 	 */
 	public static BufferedImage getLocalImage(String path) {
-		if (cachedLocalImages.containsKey(path)) {
-			return cachedLocalImages.get(path);
-		}
+		//Loading inside computeIfAbsent means threads asking for the same resource wait on one load instead of racing.
+		return cachedLocalImages.computeIfAbsent(path, (key) -> {
+			URL resourceId = ImgStore.class.getClassLoader().getResource(key);
+			if (resourceId == null) {
+				//If this fires, then the path that was provided was incorrect or something is missing from the jar.
+				throw new NullPointerException("No URL created from path: " + key);
+			}
 
-		URL resourceId = ImgStore.class.getClassLoader().getResource(path);
-		if (resourceId != null) {
 			try {
-				BufferedImage image = ImageIO.read(resourceId);
-				cachedLocalImages.put(path, image);
-				return image;
+				return ImageIO.read(resourceId);
 			} catch (IOException e) {
 				//If this fires, then the path that was provided was incorrect or something is missing from the jar.
 				throw new RuntimeException(e);
 			}
-		}
-
-		//If this fires, then the path that was provided was incorrect or something is missing from the jar.
-		throw new NullPointerException("No URL created from path: " + path);
+		});
 	}
 
 	/**
@@ -78,106 +93,455 @@ public class ImgStore {
 		return icon;
 	}
 
-	public static synchronized ImageIcon getCardImage(Card card) {
+	/**
+	 Returns the version of a card, which changes whenever the generated image for the card would. Versions are cached,
+	 so changes to a card's art are only seen once invalidateCardImage or refreshCardVersions is called for it.
+	 @param card The card to get the version of.
+	 @return The version.
+	 */
+	static long getCardVersion(Card card) {
+		Long version = cardVersions.get(card);
+		if (version == null) {
+			version = computeCardVersion(card);
+			cardVersions.put(card, version);
+		}
+		return version;
+	}
+
+	/**
+	 Works out the versions of loaded cards ahead of time, checking the art again for cards that already have one, and
+	 drops the cached images of any card whose art changed. Should be called off the Swing thread, since it checks the
+	 modification time and size of each card's art.
+	 @param cards The cards, some of which may already have versions.
+	 @return The ids of the cards whose version changed.
+	 */
+	public static Set<Integer> refreshCardVersions(List<Card> cards) {
+		Set<Integer> changed = new HashSet<>();
+		for (Card card : cards) {
+			long version = computeCardVersion(card);
+			Long previous = cardVersions.put(card, version);
+			if (previous != null && previous != version) {
+				cardImageCache.invalidate(card.name);
+				thumbnailCache.invalidate(card.name);
+				changed.add(card.id);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 Hashes everything that affects how a card is drawn, including the modification time and size of its art.
+	 */
+	private static long computeCardVersion(Card card) {
+		long hash = 1125899906842597L;
+		hash = 31 * hash + card.name.hashCode();
+		hash = 31 * hash + card.type.hashCode();
+		hash = 31 * hash + card.cost;
+		hash = 31 * hash + card.power.string.hashCode();
+		hash = 31 * hash + card.health.string.hashCode();
+		hash = 31 * hash + card.channel.string.hashCode();
+		hash = 31 * hash + card.charges.string.hashCode();
+		hash = 31 * hash + card.slots.string.hashCode();
+		hash = 31 * hash + card.textSize;
+		hash = 31 * hash + card.cardText.hashCode();
+		hash = 31 * hash + card.rarity.ordinal();
+		hash = 31 * hash + card.archetype.ordinal();
+		hash = 31 * hash + card.keywords.hashCode();
+		hash = 31 * hash + card.image.getPath().hashCode();
+		hash = 31 * hash + card.image.lastModified();
+		hash = 31 * hash + card.image.length();
+		return hash;
+	}
+
+	/**
+	 Sets the maximum amount of memory that generated card images may take up before older ones are dropped.
+	 @param bytes The new capacity in bytes.
+	 */
+	public static void setCardImageCacheCapacity(long bytes) {
+		cardImageCache.setCapacity(bytes);
+	}
+
+	public static void clearCardImageCache() {
+		cardVersions.clear();
+		cardImageCache.clear();
+		thumbnailCache.clear();
+		ArtCache.clear();
+	}
+
+	/**
+	 Drops the cached image for a card, so memory isn't held onto for a card that changed or no longer exists, and
+	 works out its version again in case its art changed.
+	 @param card The card to drop the image for.
+	 */
+	public static void invalidateCardImage(Card card) {
+		cardVersions.put(card, computeCardVersion(card));
+		cardImageCache.invalidate(card.name);
+		thumbnailCache.invalidate(card.name);
+	}
+
+	/**
+	 Returns the full size generated image for a card, going through the memory and disk caches before generating it.
+	 The returned image is shared, so it must not be modified.
+	 @param card The card to get the image for.
+	 @return The generated image.
+	 @throws InterruptedException If the thread was interrupted while generating the image.
+	 */
+	private static BufferedImage getCardRaster(Card card) throws InterruptedException {
+		return getCardRaster(card, true);
+	}
+
+	/**
+	 @param keep Whether to hold onto the image in memory. Images that are only needed to make thumbnails are left to
+	             the disk cache instead.
+	 */
+	private static BufferedImage getCardRaster(Card card, boolean keep) throws InterruptedException {
+		long version = getCardVersion(card);
+		BufferedImage rawImage = cardImageCache.get(card.name, version);
+		if (rawImage == null) {
+			rawImage = RenderCache.get(card);
+			if (rawImage == null) {
+				rawImage = ImgGenerator.generateImage(card);
+				RenderCache.put(card, rawImage);
+			}
+			if (keep) {
+				cardImageCache.put(card.name, version, rawImage);
+			}
+		} else {
+			Logger.tag(LTags.IMG_LOAD.tag).debug("Using cached image for {}.", card.name);
+		}
+		return rawImage;
+	}
+
+	/**
+	 Returns the packed thumbnails for a card, making them from the full size image if they aren't cached.
+	 */
+	private static BufferedImage getCardThumbnails(Card card) throws InterruptedException {
+		long version = getCardVersion(card);
+		BufferedImage thumbnails = thumbnailCache.get(card.name, version);
+		if (thumbnails == null) {
+			thumbnails = CardThumbnails.build(getCardRaster(card, false));
+			thumbnailCache.put(card.name, version, thumbnails);
+		}
+		return thumbnails;
+	}
+
+	/**
+	 Returns an icon for showing a card at the preview size.
+	 @param card The card to get the image for.
+	 @return The icon, or the card back if the thread was interrupted.
+	 */
+	public static ImageIcon getCardImage(Card card) {
+		return getCardImage(card, UIConstants.CARD_IMAGE_SIZE);
+	}
+
+	/**
+	 Returns an icon for showing a card at the given size, which should be no bigger than the preview size. The icon is
+	 painted from pre-scaled thumbnails, so the full size image isn't kept around for it.
+	 @param card The card to get the image for.
+	 @param size The size to show the card at.
+	 @return The icon, or the card back if the thread was interrupted.
+	 */
+	public static ImageIcon getCardImage(Card card, Dimension size) {
 		try {
-			BufferedImage rawImage = ImgGenerator.generateImage(card);
-			ScaleableImageIcon icon = new ScaleableImageIcon(rawImage);
-			icon.setIconWidth(UIConstants.CARD_IMAGE_SIZE.width);
-			icon.setIconHeight(UIConstants.CARD_IMAGE_SIZE.height);
-			return icon;
+			//If the card is already being prefetched, wait for that instead of rendering it a second time. If the prefetch
+			//hasn't started yet, pull it out of the queue and render it here instead of waiting behind other prefetches.
+			Task<?> prefetch = prefetches.get(card.name);
+			if (prefetch != null && !prefetch.unqueue()) {
+				try {
+					prefetch.get();
+				} catch (ExecutionException | CancellationException e) {
+					Logger.tag(LTags.IMG_LOAD.tag).debug("Prefetch for {} didn't finish, rendering it now.", card.name);
+				}
+			}
+			return CardThumbnails.createIcon(getCardThumbnails(card), size);
 		} catch (InterruptedException e) {
 			return UIConstants.DEFAULT_CARD_ICON;
 		}
 	}
-	public static synchronized void writeDeckImage(List<Card> cards, File filepath) {
-		final int DECK_COUNT_X = 10;
-		final int DECK_SIZE_X = ImgConstants.CARD_SIZE_X * DECK_COUNT_X;
-		final int DECK_COUNT_Y = 7;
-		final int DECK_SIZE_Y = ImgConstants.CARD_SIZE_Y * DECK_COUNT_Y;
 
-		PngWriter currDeckImage = null;
+	/**
+	 Loads everything card generation needs up front, so workers rendering cards in parallel don't all stall on it.
+	 */
+	public static void preloadCardResources() {
+		ImgGenerator.preloadResources();
+	}
+
+	/**
+	 Returns a fingerprint of everything that goes into drawing a card, so images written out earlier can be checked for
+	 whether they are still up to date. The art is fingerprinted by its contents rather than where it is or when it was
+	 last modified, so a fresh checkout of the same files gives the same fingerprint.
+	 @param card The card to fingerprint.
+	 @return A string that changes whenever the generated image for the card would.
+	 @throws IOException If the card's art couldn't be read.
+	 */
+	public static String getCardFingerprint(Card card) throws IOException {
+		return RenderCache.getContentKey(card);
+	}
+
+	/**
+	 Writes the full size image for a card out as a png. The image is written to a temp file first and moved into place,
+	 so the file is never left half written.
+	 @param card The card to write.
+	 @param file The file to write to.
+	 @throws IOException          If the file couldn't be written.
+	 @throws InterruptedException If the thread was interrupted while generating the image.
+	 */
+	public static void writeCardImage(Card card, File file) throws IOException, InterruptedException {
+		final byte[][] cardBuffer = {getBgrBytes(getCardRaster(card))};
+		final ImageInfo imageInfo = new ImageInfo(ImgConstants.CARD_SIZE_X, ImgConstants.CARD_SIZE_Y, 8, false);
+		final ImageLineByte writerLine = new ImageLineByte(imageInfo);
+		final byte[] scanline = writerLine.getScanline();
+		File temp = new File(file.getPath() + ".tmp");
+		PngWriter cardPng = new PngWriter(temp, imageInfo);
 		try {
-			Logger.tag(LTags.DECK_IMAGE.tag).info("Writing new deck image with {} cards.", cards.size());
-
-			final ImageInfo imageInfo = new ImageInfo(DECK_SIZE_X, DECK_SIZE_Y, 8, false);
-			final ImageLineInt writerLine = new ImageLineInt(imageInfo);
-			final DataBuffer[] activeBuffers = new DataBuffer[DECK_COUNT_X];
-
-			boolean firstCard = true;
-			Iterator<Card> cardIterator = cards.iterator();
-			Card card = null;
-			BufferedImage image = null;
-
-			int pageNum = 0;
-			final String parentPath = filepath.getParent() + File.separator;
-			final String baseFilename = filepath.getName().substring(0, filepath.getName().lastIndexOf('.'));
-			final String ext = filepath.getName().substring(filepath.getName().lastIndexOf('.'));
-
-			while (cardIterator.hasNext()) {
-				if (firstCard) {
-					card = cardIterator.next();
-					image = ImgGenerator.generateImage(card);
-					firstCard = false;
+			for (int y = 0; y < ImgConstants.CARD_SIZE_Y; y++) {
+				copyRow(cardBuffer, y, scanline);
+				cardPng.writeRow(writerLine);
+			}
+			cardPng.end();
+			cardPng = null;
+		} finally {
+			if (cardPng != null) {
+				cardPng.close();
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 Returns an icon for a card if its thumbnails are already cached, without rendering anything.
+	 @param card The card to get the image for.
+	 @param size The size to show the card at.
+	 @return The icon, or null if the card's thumbnails haven't been made yet.
+	 */
+	public static ImageIcon getCachedCardImage(Card card, Dimension size) {
+		BufferedImage thumbnails = thumbnailCache.get(card.name, getCardVersion(card));
+		return thumbnails != null ? CardThumbnails.createIcon(thumbnails, size) : null;
+	}
+
+	/**
+	 Makes a card's thumbnails in the background, so getCachedCardImage can return them.
+	 @param card     The card to load.
+	 @param onLoaded Called from the loading thread once the thumbnails are cached. Not called if the load is cancelled.
+	 @return The load, which can be cancelled if the card is no longer needed.
+	 */
+	public static Future<?> loadCardImage(Card card, Runnable onLoaded) {
+		//Ahead of prefetches, since these are for cards that are already on screen.
+		Task<?> task = new Task<Object>(Lane.PREFETCH, TaskScheduler.PRIORITY_NORMAL, () -> getCardThumbnails(card)) {
+			@Override
+			protected void done() {
+				//A render can't be interrupted part way, so a load cancelled while running still finishes, just quietly.
+				if (!isCancelled()) {
+					onLoaded.run();
 				}
+			}
+		};
+		return TaskScheduler.submit(task);
+	}
+
+	/**
+	 Renders cards in the background ahead of them being needed, so they come straight out of the cache when they are.
+	 Prefetches for cards that aren't in the new list are cancelled, so this can be called every time the selection moves.
+	 @param selected The card being shown. It's loaded separately, but a prefetch already running for it is left alone.
+	 @param cards    The cards to prefetch, most likely to be needed first.
+	 */
+	public static void prefetchCardImages(Card selected, List<Card> cards) {
+		Set<String> window = new HashSet<>(cards.size() * 2 + 2);
+		window.add(selected.name);
+		for (Card card : cards) {
+			window.add(card.name);
+		}
 
-				//Each loop iteration writes a png 'page'.
-				{
-					File currFile = new File(parentPath + baseFilename + "_" + pageNum++ + ext);
-					Logger.tag(LTags.DECK_IMAGE.tag).info("Writing to {}", filepath.getName());
-					currDeckImage = new PngWriter(currFile, imageInfo);
+		for (Iterator<Map.Entry<String, Task<?>>> iterator = prefetches.entrySet().iterator(); iterator.hasNext(); ) {
+			Map.Entry<String, Task<?>> prefetch = iterator.next();
+			if (!window.contains(prefetch.getKey())) {
+				prefetch.getValue().cancel(true);
+				iterator.remove();
+			}
+		}
+
+		for (int i = 0; i < cards.size(); i++) {
+			Card card = cards.get(i);
+			if (prefetches.containsKey(card.name) || thumbnailCache.contains(card.name, getCardVersion(card))) {
+				continue;
+			}
+
+			Task<BufferedImage> task = new Task<BufferedImage>(Lane.PREFETCH, TaskScheduler.PRIORITY_NORMAL - 1 - i, () -> getCardThumbnails(card)) {
+				@Override
+				protected void done() {
+					prefetches.remove(card.name, this);
 				}
+			};
+			prefetches.put(card.name, task);
+			TaskScheduler.submit(task);
+		}
+	}
 
-				//Whenever we reach a row the current cards don't extend into, get the new active buffers.
-				for (int y = 0; y < DECK_SIZE_Y; y++) {
-					if (y % ImgConstants.CARD_SIZE_Y == 0) {
-						Logger.tag(LTags.DECK_IMAGE.tag).debug("Getting image buffers.");
-						for (int index = 0; index < DECK_COUNT_X; index++) {
-							if (card == null) { //When out of cards, clear buffers and print blackspace.
-								Logger.tag(LTags.DECK_IMAGE.tag).debug("Getting null buffer.");
-								activeBuffers[index] = null;
-							} else {
-								Logger.tag(LTags.DECK_IMAGE.tag).debug("Getting buffer for card {}", card.name);
-
-								activeBuffers[index] = image.getRaster().getDataBuffer();
-								if (cardIterator.hasNext()) {
-									card = cardIterator.next();
-									image = ImgGenerator.generateImage(card);
-								} else {
-									card = null;
-								}
-							}
-						}
-					}
+	static ThreadFactory namedThreads(String name) {
+		return namedThreads(name, Thread.NORM_PRIORITY);
+	}
 
-					//Write the current row in the image.
-					for (int cardX = 0; cardX < DECK_COUNT_X; cardX++) {
-						DataBuffer cardBuffer = activeBuffers[cardX];
-						if (cardBuffer != null) {
-							for (int x = 0; x < ImgConstants.CARD_SIZE_X; x++) {
-								int outIndex = 3 * (x + cardX * ImgConstants.CARD_SIZE_X);
-								int cardIndex = 3 * (x + ((y % ImgConstants.CARD_SIZE_Y) * ImgConstants.CARD_SIZE_X));
-								writerLine.getScanline()[outIndex] = cardBuffer.getElem(cardIndex + 2);     //R
-								writerLine.getScanline()[outIndex + 1] = cardBuffer.getElem(cardIndex + 1); //G
-								writerLine.getScanline()[outIndex + 2] = cardBuffer.getElem(cardIndex);        //B
-							}
-						} else {
-							for (int x = 3 * cardX * ImgConstants.CARD_SIZE_X; x < 3 * (cardX * ImgConstants.CARD_SIZE_X + ImgConstants.CARD_SIZE_X); x++) {
-								writerLine.getScanline()[x] = 0;
-							}
-						}
+	static ThreadFactory namedThreads(String name, int priority) {
+		AtomicInteger count = new AtomicInteger(0);
+		return (r) -> {
+			Thread thread = new Thread(r, name + " " + count.getAndIncrement());
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		};
+	}
+
+	/**
+	 Writes the cards out as a series of png 'pages' of DECK_COUNT_X by DECK_COUNT_Y cards, named after filepath with the
+	 page number appended. Cards are rendered on a pool of workers in deck order, while up to MAX_PAGES_IN_FLIGHT pages
+	 are encoded at once, so the next page is being rendered while the current one is being written out.
+	 @param cards    The cards to write, in order.
+	 @param filepath The base path for the pages.
+	 */
+	public static void writeDeckImage(List<Card> cards, File filepath) {
+		Logger.tag(LTags.DECK_IMAGE.tag).info("Writing new deck image with {} cards.", cards.size());
+		final int pageCount = (cards.size() + DECK_COUNT_X * DECK_COUNT_Y - 1) / (DECK_COUNT_X * DECK_COUNT_Y);
+		final ImageInfo imageInfo = new ImageInfo(DECK_SIZE_X, DECK_SIZE_Y, 8, false);
+		final String parentPath = filepath.getParent() + File.separator;
+		final String baseFilename = filepath.getName().substring(0, filepath.getName().lastIndexOf('.'));
+		final String ext = filepath.getName().substring(filepath.getName().lastIndexOf('.'));
+
+		//Build the frame layers up front, rather than having every worker wait on the first one to get to them.
+		ImgGenerator.preloadResources();
+
+		//Run at the export lane's priority, so the selected card still renders promptly while this is going.
+		int priority = Lane.EXPORT.threadPriority;
+		ExecutorService renderPool = Executors.newFixedThreadPool(RENDER_THREADS, namedThreads("Deck Image Renderer", priority));
+		ExecutorService pagePool = Executors.newFixedThreadPool(Integer.max(1, Integer.min(pageCount, MAX_PAGES_IN_FLIGHT)), namedThreads("Deck Image Writer", priority));
+		Semaphore pagesInFlight = new Semaphore(MAX_PAGES_IN_FLIGHT);
+		List<Future<?>> pages = new ArrayList<>(pageCount);
+		try {
+			for (int pageNum = 0; pageNum < pageCount && !TaskScheduler.isCancelled(); pageNum++) {
+				//Holding back on rendering further ahead keeps memory bounded to a few pages worth of cards.
+				pagesInFlight.acquire();
+				List<Card> pageCards = cards.subList(pageNum * DECK_COUNT_X * DECK_COUNT_Y, Integer.min(cards.size(), (pageNum + 1) * DECK_COUNT_X * DECK_COUNT_Y));
+				List<Future<BufferedImage>> renders = new ArrayList<>(pageCards.size());
+				Card previous = null;
+				for (Card card : pageCards) {
+					//Copies of a card are next to each other in deck lists, so only render the first.
+					if (card != previous) {
+						renders.add(renderPool.submit(() -> getCardRaster(card)));
+					} else {
+						renders.add(renders.get(renders.size() - 1));
 					}
-					currDeckImage.writeRow(writerLine);
+					previous = card;
 				}
 
+				File pageFile = new File(parentPath + baseFilename + "_" + pageNum + ext);
+				pages.add(pagePool.submit(() -> {
+					try {
+						writeDeckPage(renders, pageFile, imageInfo);
+					} finally {
+						pagesInFlight.release();
+					}
+					return null;
+				}));
+			}
+
+			for (Future<?> page : pages) {
+				page.get();
+			}
+			if (TaskScheduler.isCancelled()) {
+				Logger.tag(LTags.DECK_IMAGE.tag).info("Deck image cancelled after {} pages.", pages.size());
+			} else {
 				Logger.tag(LTags.DECK_IMAGE.tag).info("Deck image written.");
-				currDeckImage.end();
 			}
-			currDeckImage = null;
+		} catch (InterruptedException e) {
+			Logger.tag(LTags.DECK_IMAGE.tag).info("Deck image cancelled.");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Logger.tag(LTags.DECK_IMAGE.tag).error(e.getCause(), "Unable to write image.");
 		} catch (Exception e) {
 			Logger.tag(LTags.DECK_IMAGE.tag).error(e, "Unable to write image.");
 		} finally {
-			if (currDeckImage != null) {
-				currDeckImage.close();
+			pagePool.shutdownNow();
+			renderPool.shutdownNow();
+		}
+	}
+
+	/**
+	 Gets the backing array of a card image as tightly packed BGR bytes, copying the image into that layout if it isn't
+	 already in it.
+	 @param image The card image.
+	 @return The pixels of the image, 3 bytes per pixel in BGR order with no padding between rows.
+	 */
+	private static byte[] getBgrBytes(BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_3BYTE_BGR && image.getRaster().getParent() == null
+				&& image.getSampleModel() instanceof PixelInterleavedSampleModel) {
+			PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) image.getSampleModel();
+			if (sampleModel.getPixelStride() == 3 && sampleModel.getScanlineStride() == 3 * image.getWidth()) {
+				return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			}
+		}
+
+		Logger.tag(LTags.DECK_IMAGE.tag).debug("Converting card image of type {} to BGR.", image.getType());
+		BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D canvas = converted.createGraphics();
+		canvas.drawImage(image, 0, 0, null);
+		canvas.dispose();
+		return ((DataBufferByte) converted.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 Copies a row of pixels from each card into a deck image scanline, swapping each pixel from BGR to RGB.
+	 @param cardBuffers The BGR bytes for each card in the row, or null for blank spaces.
+	 @param cardY       The row within the cards to copy.
+	 @param scanline    The RGB scanline to write to.
+	 */
+	static void copyRow(byte[][] cardBuffers, int cardY, byte[] scanline) {
+		final int CARD_ROW_BYTES = 3 * ImgConstants.CARD_SIZE_X;
+		int cardIndexStart = cardY * CARD_ROW_BYTES;
+		for (int cardX = 0; cardX < cardBuffers.length; cardX++) {
+			byte[] cardBuffer = cardBuffers[cardX];
+			int outIndex = cardX * CARD_ROW_BYTES;
+			if (cardBuffer != null) {
+				int cardIndexEnd = cardIndexStart + CARD_ROW_BYTES;
+				for (int cardIndex = cardIndexStart; cardIndex < cardIndexEnd; cardIndex += 3, outIndex += 3) {
+					scanline[outIndex] = cardBuffer[cardIndex + 2];     //R
+					scanline[outIndex + 1] = cardBuffer[cardIndex + 1]; //G
+					scanline[outIndex + 2] = cardBuffer[cardIndex];     //B
+				}
+			} else {
+				Arrays.fill(scanline, outIndex, outIndex + CARD_ROW_BYTES, (byte) 0);
+			}
+		}
+	}
+
+	private static void writeDeckPage(List<Future<BufferedImage>> renders, File file, ImageInfo imageInfo) throws InterruptedException, ExecutionException {
+		Logger.tag(LTags.DECK_IMAGE.tag).info("Writing to {}", file.getName());
+		final ImageLineByte writerLine = new ImageLineByte(imageInfo);
+		final byte[] scanline = writerLine.getScanline();
+		final byte[][] activeBuffers = new byte[DECK_COUNT_X][];
+		PngWriter deckPage = new PngWriter(file, imageInfo);
+		try {
+			for (int y = 0; y < DECK_SIZE_Y; y++) {
+				//Whenever we reach a row the current cards don't extend into, get the new active buffers.
+				if (y % ImgConstants.CARD_SIZE_Y == 0) {
+					Logger.tag(LTags.DECK_IMAGE.tag).debug("Getting image buffers.");
+					int firstSlot = (y / ImgConstants.CARD_SIZE_Y) * DECK_COUNT_X;
+					for (int index = 0; index < DECK_COUNT_X; index++) {
+						int slot = firstSlot + index;
+						if (slot < renders.size()) {
+							activeBuffers[index] = getBgrBytes(renders.get(slot).get());
+						} else { //When out of cards, clear buffers and print blackspace.
+							activeBuffers[index] = null;
+						}
+					}
+				}
+
+				copyRow(activeBuffers, y % ImgConstants.CARD_SIZE_Y, scanline);
+				deckPage.writeRow(writerLine);
+			}
+			deckPage.end();
+			deckPage = null;
+		} finally {
+			if (deckPage != null) {
+				deckPage.close();
 			}
 		}
 	}
@@ -0,0 +1,358 @@
+package database.image;
+
+import application.LTags;
+import database.card.Card;
+import org.tinylog.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ Content addressed on-disk cache of generated card faces. Files are named after a hash of everything that goes into
+ drawing the card, so entries never need to be invalidated, just evicted once the cache gets too big.
+ */
+class RenderCache {
+	private RenderCache() {}
+
+	//Bump whenever ImgGenerator's output changes so old renders stop being served.
+	private static final int RENDERER_VERSION = 2;
+	private static final String[] FRAME_RESOURCES = {"images/cardframes.png", "images/cardstatshadow.png", "images/cardborder.png"};
+	private static final String EXT = ".png";
+	private static final String TEMP_EXT = ".tmp";
+	private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final byte[] PNG_END = {0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
+
+	private static final File directory = new File(System.getProperty("cardgenerator.renderCacheDir", "cache" + File.separator + "cards"));
+	private static final long capacityBytes = Long.getLong("cardgenerator.renderCacheBytes", 256L * 1024 * 1024);
+	private static final ExecutorService writerThread = Executors.newSingleThreadExecutor((r) -> {
+		Thread thread = new Thread(r, "Render Cache Writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static byte[] frameDigest;
+	private static boolean available = false;
+	private static long sizeBytes = 0;
+
+	/**
+	 Hashes the frame resources and checks the cache directory over on first use.
+	 */
+	private static synchronized boolean init() {
+		if (frameDigest != null) {
+			return available;
+		}
+
+		MessageDigest digest = newDigest();
+		for (String resource : FRAME_RESOURCES) {
+			try (InputStream stream = RenderCache.class.getClassLoader().getResourceAsStream(resource)) {
+				if (stream != null) {
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = stream.read(buffer)) != -1) {
+						digest.update(buffer, 0, read);
+					}
+				}
+			} catch (IOException e) {
+				Logger.tag(LTags.IMG_LOAD.tag).warn(e, "Unable to read {} while hashing card frames.", resource);
+			}
+		}
+		frameDigest = digest.digest();
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			Logger.tag(LTags.IMG_LOAD.tag).warn("Unable to create render cache at {}, disk caching disabled.", directory.getAbsolutePath());
+			return available;
+		}
+		available = true;
+		checkIntegrity();
+		trim();
+		return available;
+	}
+
+	/**
+	 Removes anything from the cache directory that isn't a complete render. This covers files left over from writes that
+	 were interrupted by the app closing as well as anything else that ended up in the directory.
+	 */
+	private static void checkIntegrity() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		int removed = 0;
+		sizeBytes = 0;
+		for (File file : files) {
+			if (!file.isFile()) {
+				continue;
+			}
+
+			if (file.getName().endsWith(EXT) && isCompletePng(file)) {
+				sizeBytes += file.length();
+			} else if (file.delete()) {
+				removed++;
+			} else {
+				Logger.tag(LTags.IMG_LOAD.tag).warn("Unable to remove invalid render cache entry {}.", file.getAbsolutePath());
+			}
+		}
+		Logger.tag(LTags.IMG_LOAD.tag).info("Render cache at {} holds {} bytes, removed {} invalid entries.", directory.getAbsolutePath(), sizeBytes, removed);
+	}
+
+	private static boolean isCompletePng(File file) {
+		long length = file.length();
+		if (length < PNG_SIGNATURE.length + PNG_END.length) {
+			return false;
+		}
+
+		try (RandomAccessFile reader = new RandomAccessFile(file, "r")) {
+			byte[] start = new byte[PNG_SIGNATURE.length];
+			reader.readFully(start);
+			byte[] end = new byte[PNG_END.length];
+			reader.seek(length - PNG_END.length);
+			reader.readFully(end);
+			return Arrays.equals(start, PNG_SIGNATURE) && Arrays.equals(end, PNG_END);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 Evicts the least recently used renders until the cache fits within its capacity. Reads touch the modification time of
+	 an entry, so it doubles as the last access time.
+	 */
+	private static synchronized void trim() {
+		if (sizeBytes <= capacityBytes) {
+			return;
+		}
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(EXT));
+		if (files == null) {
+			return;
+		}
+
+		List<File> entries = new ArrayList<>(files.length);
+		Collections.addAll(entries, files);
+		entries.sort(Comparator.comparingLong(File::lastModified));
+		for (File file : entries) {
+			if (sizeBytes <= capacityBytes) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				sizeBytes -= length;
+				Logger.tag(LTags.IMG_LOAD.tag).debug("Evicted {} from the render cache.", file.getName());
+			}
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//Every JVM is required to provide SHA-256.
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		update(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	private static void update(MessageDigest digest, long value) {
+		for (int i = 0; i < Long.BYTES; i++) {
+			digest.update((byte) (value >>> (i * 8)));
+		}
+	}
+
+	/**
+	 Hashes everything that goes into drawing a card, including the renderer version and frame images. The art is
+	 identified by its location and modification time, which is cheap enough to check whenever a card is shown.
+	 @param card The card to hash.
+	 @return The hash as a hex string.
+	 */
+	static String getKey(Card card) {
+		MessageDigest digest = digestCard(card);
+		update(digest, card.image.getAbsolutePath());
+		update(digest, card.image.lastModified());
+		update(digest, card.image.length());
+		return toHex(digest);
+	}
+
+	/**
+	 Like getKey, but identifies the art by its path as given in the database and a hash of its contents, so the key
+	 stays the same in a fresh checkout of the same files.
+	 @param card The card to hash.
+	 @return The hash as a hex string.
+	 @throws IOException If the art exists but couldn't be read.
+	 */
+	static String getContentKey(Card card) throws IOException {
+		MessageDigest digest = digestCard(card);
+		update(digest, card.image.getPath().replace(File.separatorChar, '/'));
+		if (card.image.isFile()) {
+			MessageDigest art = newDigest();
+			try (InputStream stream = new FileInputStream(card.image)) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = stream.read(buffer)) > 0) {
+					art.update(buffer, 0, read);
+				}
+			}
+			digest.update(art.digest());
+		} else {
+			update(digest, -1);
+		}
+		return toHex(digest);
+	}
+
+	private static MessageDigest digestCard(Card card) {
+		init();
+		MessageDigest digest = newDigest();
+		update(digest, RENDERER_VERSION);
+		digest.update(frameDigest);
+		update(digest, card.name);
+		update(digest, card.type);
+		update(digest, card.cost);
+		update(digest, card.power.string);
+		update(digest, card.health.string);
+		update(digest, card.channel.string);
+		update(digest, card.charges.string);
+		update(digest, card.slots.string);
+		update(digest, card.textSize);
+		update(digest, card.cardText);
+		update(digest, card.rarity.name());
+		update(digest, card.archetype.name());
+		update(digest, card.keywords.size());
+		for (String keyword : card.keywords) {
+			update(digest, keyword);
+		}
+		return digest;
+	}
+
+	private static String toHex(MessageDigest digest) {
+		StringBuilder key = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	private static File getFile(Card card) {
+		return new File(directory, getKey(card) + EXT);
+	}
+
+	/**
+	 Returns a previously generated image for the card, if there is one.
+	 @param card The card to look up.
+	 @return The cached render, or null if it isn't in the cache.
+	 */
+	static BufferedImage get(Card card) {
+		if (!init()) {
+			return null;
+		}
+
+		File file = getFile(card);
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			BufferedImage image = ImageIO.read(file);
+			if (image == null || image.getWidth() != ImgConstants.CARD_SIZE_X || image.getHeight() != ImgConstants.CARD_SIZE_Y) {
+				Logger.tag(LTags.IMG_LOAD.tag).warn("Render cache entry {} for {} is invalid.", file.getName(), card.name);
+				return null;
+			}
+
+			//Everything downstream expects the same layout as images straight from ImgGenerator.
+			if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+				BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+				Graphics2D canvas = converted.createGraphics();
+				canvas.drawImage(image, 0, 0, null);
+				canvas.dispose();
+				image = converted;
+			}
+
+			if (!file.setLastModified(System.currentTimeMillis())) {
+				Logger.tag(LTags.IMG_LOAD.tag).debug("Unable to touch render cache entry {}.", file.getName());
+			}
+			Logger.tag(LTags.IMG_LOAD.tag).debug("Loaded {} from the render cache.", card.name);
+			return image;
+		} catch (IOException e) {
+			Logger.tag(LTags.IMG_LOAD.tag).warn(e, "Unable to read render cache entry {} for {}.", file.getName(), card.name);
+			return null;
+		}
+	}
+
+	/**
+	 Writes a generated image to the cache in the background.
+	 @param card  The card the image belongs to.
+	 @param image The generated image. Must not be modified afterwards.
+	 */
+	static void put(Card card, BufferedImage image) {
+		if (!init()) {
+			return;
+		}
+
+		File file = getFile(card);
+		writerThread.submit(() -> {
+			if (file.exists()) {
+				return;
+			}
+
+			//Write to a temp file and move it into place so a half written file is never served.
+			File temp = new File(directory, file.getName() + TEMP_EXT);
+			try {
+				if (!ImageIO.write(image, "png", temp)) {
+					Logger.tag(LTags.IMG_LOAD.tag).warn("No png writer available, unable to cache {}.", card.name);
+					return;
+				}
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				synchronized (RenderCache.class) {
+					sizeBytes += file.length();
+				}
+				trim();
+			} catch (IOException e) {
+				Logger.tag(LTags.IMG_LOAD.tag).warn(e, "Unable to write {} to the render cache.", card.name);
+				if (temp.exists() && !temp.delete()) {
+					Logger.tag(LTags.IMG_LOAD.tag).warn("Unable to remove {}.", temp.getAbsolutePath());
+				}
+			}
+		});
+	}
+
+	/**
+	 Waits for any writes still in progress, then deletes every render in the cache. The app never needs this, since
+	 entries don't go stale, but benchmarks use it to measure rendering from scratch.
+	 @throws InterruptedException If the thread was interrupted while waiting for writes.
+	 */
+	static void clear() throws InterruptedException {
+		try {
+			writerThread.submit(() -> {}).get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+
+		synchronized (RenderCache.class) {
+			File[] files = directory.listFiles((dir, name) -> name.endsWith(EXT));
+			if (files != null) {
+				for (File file : files) {
+					if (!file.delete()) {
+						Logger.tag(LTags.IMG_LOAD.tag).warn("Unable to remove render cache entry {}.", file.getAbsolutePath());
+					}
+				}
+			}
+			sizeBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package database.image;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ Lays out and paints wrapped text into a box. Replaces the old JTextPane hack, so it is safe to call from any thread and
+ works without a display. */
+class TextPainter {
+	private TextPainter() {}
+
+	private static final String FONT_NAME = "Lucida Sans Typewriter";
+	//Matches the margin the JTextPane used to be given.
+	private static final Insets MARGIN = new Insets(1, 1, 1, 1);
+	private static final Map<Integer, Font> fonts = new ConcurrentHashMap<>(16);
+
+	enum Alignment {
+		LEFT,
+		CENTER,
+		RIGHT
+	}
+
+	static class Style {
+		final Alignment alignment;
+		//Null to use the color currently set on the canvas.
+		final Color foreground;
+
+		Style(Alignment alignment) {
+			this(alignment, null);
+		}
+
+		Style(Alignment alignment, Color foreground) {
+			this.alignment = alignment;
+			this.foreground = foreground;
+		}
+	}
+
+	private static Font getFont(int size, boolean bold) {
+		return fonts.computeIfAbsent(bold ? -size : size, (key) -> new Font(FONT_NAME, bold ? Font.BOLD : Font.PLAIN, size));
+	}
+
+	/**
+	 Draws text into the given box, wrapping on word boundaries and on newlines. Anything that overflows the bottom of the
+	 box is clipped.
+	 @param canvas The graphics to draw to.
+	 @param text   The text to draw.
+	 @param rect   The box to draw the text into.
+	 @param size   The font size.
+	 @param bold   Whether the text should be bold.
+	 @param style  The alignment and color of the text.
+	 */
+	static void drawTextbox(Graphics2D canvas, String text, Rectangle rect, int size, boolean bold, Style style) {
+		Graphics2D g = (Graphics2D) canvas.create(rect.x, rect.y, rect.width, rect.height);
+		try {
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			g.setColor(style.foreground != null ? style.foreground : canvas.getColor());
+
+			Font font = getFont(size, bold);
+			FontRenderContext frc = g.getFontRenderContext();
+			float wrapWidth = rect.width - MARGIN.left - MARGIN.right;
+			float maxY = rect.height - MARGIN.bottom;
+			float y = MARGIN.top;
+
+			for (String paragraph : text.split("\n", -1)) {
+				if (y >= maxY) {
+					break;
+				}
+
+				//LineBreakMeasurer can't handle empty strings, so blank lines just take up a line of space.
+				if (paragraph.isEmpty()) {
+					y += font.getLineMetrics(" ", frc).getHeight();
+					continue;
+				}
+
+				AttributedString attributedText = new AttributedString(paragraph);
+				attributedText.addAttribute(TextAttribute.FONT, font);
+				LineBreakMeasurer measurer = new LineBreakMeasurer(attributedText.getIterator(), frc);
+				while (measurer.getPosition() < paragraph.length() && y < maxY) {
+					TextLayout line = measurer.nextLayout(wrapWidth);
+					float x = MARGIN.left;
+					if (style.alignment == Alignment.CENTER) {
+						x += (wrapWidth - line.getVisibleAdvance()) / 2;
+					} else if (style.alignment == Alignment.RIGHT) {
+						x += wrapWidth - line.getVisibleAdvance();
+					}
+
+					y += line.getAscent();
+					line.draw(g, x, y);
+					y += line.getDescent() + line.getLeading();
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package gui;
+
+import application.LTags;
+import database.card.CardCount;
+import org.tinylog.Logger;
+
+import javax.swing.*;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ Collects card changes from the database and hands them to the GUI in batches, at most once per frame. Opening a stack
+ of packs or reading a deck changes a lot of cards in a row, and updating the table and re-running the filter for each
+ one separately can keep the Swing thread busy for a good while.
+ */
+class CardUpdateBus {
+	private static final Object lock = new Object();
+	private static Batch pending = new Batch();
+	private static boolean scheduled = false;
+	private static Timer flushTimer;
+
+	private CardUpdateBus() {}
+
+	/**
+	 The changes collected between flushes.
+	 */
+	static class Batch {
+		//Cards whose rows need redrawing, by id.
+		final BitSet changedIds = new BitSet();
+		//The latest copy state for each changed card.
+		final Map<Integer, CardCount> copyStates = new HashMap<>();
+		//The latest deck size, or -1 if it hasn't changed.
+		int deckSize = -1;
+		//Whether the deck was cleared. Anything else in the batch happened after that.
+		boolean deckCleared = false;
+	}
+
+	/**
+	 Records a change to a card. Can be called from any thread.
+	 @param cardId     The card that changed.
+	 @param deckCopies The card's copy state in the deck.
+	 */
+	static void cardChanged(int cardId, CardCount deckCopies) {
+		synchronized (lock) {
+			pending.changedIds.set(cardId);
+			pending.copyStates.put(cardId, deckCopies);
+			schedule();
+		}
+	}
+
+	/**
+	 Records a change to the size of the deck. Can be called from any thread.
+	 */
+	static void deckChanged(int deckSize) {
+		synchronized (lock) {
+			pending.deckSize = deckSize;
+			schedule();
+		}
+	}
+
+	/**
+	 Records the deck being cleared, which replaces any changes from before it. Can be called from any thread.
+	 */
+	static void deckCleared() {
+		synchronized (lock) {
+			pending = new Batch();
+			pending.deckCleared = true;
+			pending.deckSize = 0;
+			schedule();
+		}
+	}
+
+	private static void schedule() {
+		if (!scheduled) {
+			scheduled = true;
+			SwingUtilities.invokeLater(() -> {
+				if (flushTimer == null) {
+					flushTimer = new Timer(UIConstants.UPDATE_INTERVAL_MILLIS, (e) -> flush());
+					flushTimer.setRepeats(false);
+				}
+				flushTimer.start();
+			});
+		}
+	}
+
+	private static void flush() {
+		Batch batch;
+		synchronized (lock) {
+			batch = pending;
+			pending = new Batch();
+			scheduled = false;
+		}
+		Logger.tag(LTags.UI_UPDATES.tag).debug("Applying updates for {} cards.", batch.changedIds.cardinality());
+		Gui.applyCardUpdates(batch);
+	}
+}
@@ -3,19 +3,26 @@ package gui;
 import application.LTags;
 import com.formdev.flatlaf.FlatDarkLaf;
 import database.card.CardCount;
+import database.card.CardIndex;
+import database.card.CardListDiff;
 import gui.panes.CardFilterPane;
+import gui.panes.CardGridPane;
 import gui.panes.CardInfoPane;
 import gui.panes.CardListPane;
 import gui.panes.MenuBar;
-import gui.panes.models.CardTableModel;
+import gui.panes.models.CardTableFilter;
 import org.tinylog.Logger;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
 
 public class Gui {
 	private static CardListPane cardListGui;
@@ -23,6 +30,8 @@ public class Gui {
 	private static CardFilterPane cardFilterGui;
 	private static MenuBar menuBar;
 	private static JFrame frame;
+	private static CardGridPane cardGridGui;
+	private static JDialog cardGridWindow;
 
 	private static final CountDownLatch guiAvailable = new CountDownLatch(1);
 
@@ -126,6 +135,34 @@ public class Gui {
 		});
 	}
 
+	/**
+	 Swaps in a reloaded card database and patches the table to match, all in one go on the Swing thread so the table
+	 never sees the new database with the old row layout. Blocks until done.
+	 @param diff           The changes from the reload.
+	 @param swapDatabase   Switches over to the reloaded database.
+	 @param packNames      The packs in the reloaded database.
+	 @param deckSize       The size of the deck after the reload.
+	 */
+	public static void applyCardListDiff(CardListDiff diff, Runnable swapDatabase, Set<String> packNames, int deckSize) {
+		try {
+			getFrame();
+			SwingUtilities.invokeAndWait(() -> {
+				Logger.tag(LTags.UI_SYNC.tag).debug("Patching card list table.");
+				swapDatabase.run();
+				cardListGui.applyDiff(diff);
+				cardInfoGui.remapCard(diff);
+				cardFilterGui.filter(null);
+				menuBar.setPacks(packNames);
+				menuBar.setDeckSizeCounter(deckSize);
+				updateCardGrid();
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (InvocationTargetException e) {
+			Logger.tag(LTags.UI_SYNC.tag).error(e.getCause(), "Unable to patch card list table.");
+		}
+	}
+
 	public static void resetCardList() {
 		if (guiAvailable.getCount() == 0) {
 			SwingUtilities.invokeLater(() -> {
@@ -133,6 +170,7 @@ public class Gui {
 				cardInfoGui.setCard(-1, CardCount.INVALID,  null);
 				menuBar.setDeckSizeCounter(0);
 				menuBar.setPacks(Collections.emptySet());
+				updateCardGrid();
 			});
 		}
 	}
@@ -141,26 +179,52 @@ public class Gui {
 		SwingUtilities.invokeLater(() -> cardInfoGui.setCard(id, copies, image));
 	}
 
-	public static void setCardFilter(RowFilter<CardTableModel, Integer> filter) {
+	public static void setCardFilter(Function<CardIndex, BitSet> filter) {
 		SwingUtilities.invokeLater(() -> cardListGui.setFilter(filter));
 	}
 
+	/**
+	 Queues up a redraw of a card's row and info. Changes are batched up and applied about once a frame.
+	 */
 	public static void updateCardInfo(int id, CardCount deckCopyState) {
-		SwingUtilities.invokeLater(() -> {
-			cardListGui.updateRow(id);
-			cardInfoGui.updateCard(id, deckCopyState);
-			cardFilterGui.filter(null);
-		});
+		CardUpdateBus.cardChanged(id, deckCopyState);
 	}
 
 	public static void updateDeck(int cardId, CardCount copies, int deckSize) {
-		SwingUtilities.invokeLater(() -> {
-			updateCardInfo(cardId, copies);
-			menuBar.setDeckSizeCounter(deckSize);
-		});
+		CardUpdateBus.cardChanged(cardId, copies);
+		CardUpdateBus.deckChanged(deckSize);
+	}
+
+	/**
+	 Applies a batch of card changes: one table event per run of changed rows, and one refilter for the lot.
+	 */
+	static void applyCardUpdates(CardUpdateBus.Batch batch) {
+		if (guiAvailable.getCount() != 0) {
+			return;
+		}
+
+		if (batch.deckCleared) {
+			cardListGui.updateTable();
+			cardInfoGui.updateCard(CardCount.NONE);
+		}
+		cardListGui.updateRows(batch.changedIds);
+		for (Map.Entry<Integer, CardCount> copyState : batch.copyStates.entrySet()) {
+			cardInfoGui.updateCard(copyState.getKey(), copyState.getValue());
+		}
+		if (batch.deckCleared || !batch.changedIds.isEmpty()) {
+			CardTableFilter.refilterCollections();
+		}
+		if (batch.deckSize != -1) {
+			menuBar.setDeckSizeCounter(batch.deckSize);
+			updateCardGrid();
+		}
 	}
 
 	public static void displayPopup(String text) {
+		//There's nowhere to show it when running without a display, and whatever raised it has already logged it.
+		if (GraphicsEnvironment.isHeadless()) {
+			return;
+		}
 		SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(getFrame(), text));
 	}
 
@@ -176,9 +240,29 @@ public class Gui {
 	}
 
 	public static void clearDeck() {
+		CardUpdateBus.deckCleared();
+	}
+
+	/**
+	 Opens the card grid window, creating it the first time it's needed.
+	 */
+	public static void showCardGrid() {
 		SwingUtilities.invokeLater(() -> {
-			cardListGui.updateTable();
-			cardInfoGui.updateCard(CardCount.NONE);
+			if (cardGridWindow == null) {
+				cardGridGui = new CardGridPane(cardListGui);
+				cardGridWindow = new JDialog(getFrame(), "Card Grid", false);
+				cardGridWindow.setContentPane(cardGridGui);
+				cardGridWindow.pack();
+				cardGridWindow.setLocationRelativeTo(getFrame());
+			}
+			cardGridWindow.setVisible(true);
+			cardGridWindow.toFront();
 		});
 	}
+
+	private static void updateCardGrid() {
+		if (cardGridGui != null) {
+			cardGridGui.deckChanged();
+		}
+	}
 }
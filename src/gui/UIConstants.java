@@ -7,6 +7,8 @@ import java.awt.*;
 
 public class UIConstants {
 	public static int MARGIN = 10;
+	//How often changes to cards are pushed to the GUI, about once a frame.
+	public static final int UPDATE_INTERVAL_MILLIS = 16;
 
 	//Card Info Pane
 	public static final Dimension CARD_INFO_PANE_SIZE = new Dimension(320, 420);
@@ -14,12 +16,21 @@ public class UIConstants {
 	public static final ImageIcon DEFAULT_CARD_ICON = ImgStore.getLocalIcon("images/defaultcardback.png", CARD_IMAGE_SIZE);
 	public static final Dimension CARD_BUTTON_SIZE = new Dimension(125, 50);
 
+	//Card Grid Pane
+	public static final Dimension CARD_GRID_PANE_SIZE = new Dimension(820, 640);
+	public static final Dimension CARD_THUMBNAIL_SIZE = new Dimension(CARD_IMAGE_SIZE.width / 2, CARD_IMAGE_SIZE.height / 2);
+	public static final ImageIcon DEFAULT_THUMBNAIL_ICON = ImgStore.getLocalIcon("images/defaultcardback.png", CARD_THUMBNAIL_SIZE);
+
 	//Card Filter Pane
-	public static final Dimension CARD_FILTER_PANE_SIZE = new Dimension(320, 140);
+	public static final Dimension CARD_FILTER_PANE_SIZE = new Dimension(320, 165);
 	public static final Dimension COLOR_BUTTON_SIZE = new Dimension(42, 42);
 	public static final Insets SEARCH_BOX_MARGIN = new Insets(0, 0, 0, 0);
+	//How long typing has to pause for before the search is run.
+	public static final int SEARCH_DELAY_MILLIS = 150;
 
 	//Card List Pane
+	//How many rows above and below the selection to render ahead of time.
+	public static final int PREFETCH_ROWS = 4;
 	public static final int[] DEFAULT_COLUMN_SIZES = {
 			200,
 			125,
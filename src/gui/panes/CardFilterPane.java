@@ -1,18 +1,22 @@
 package gui.panes;
 
+import application.LTags;
 import database.card.Archetype;
-import database.card.Card;
 import gui.UIConstants;
 import gui.elements.ImageToggleButton;
 import gui.elements.SearchBox;
+import gui.panes.models.CardQuery;
 import gui.panes.models.CardTableFilter;
+import org.tinylog.Logger;
 
 import javax.swing.*;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.*;
-import java.util.function.Predicate;
 
 public class CardFilterPane extends JPanel {
 	private final Map<Archetype, ImageToggleButton> colorButtons;
@@ -21,6 +25,10 @@ public class CardFilterPane extends JPanel {
 	private final SearchBox keywordField = new SearchBox("Keywords");
 	private final SearchBox typeField = new SearchBox("Type");
 	private final SearchBox textField = new SearchBox("Card Text");
+	private final SearchBox statsField = new SearchBox("Stats (cost<=3 power>1)");
+	//Restarted on every keystroke, so the search runs once typing pauses.
+	private final Timer searchDelay = new Timer(UIConstants.SEARCH_DELAY_MILLIS, this::search);
+	private List<String> lastSearch = Collections.emptyList();
 
 	public CardFilterPane() {
 		JButton searchButton = new JButton("Search");
@@ -37,6 +45,7 @@ public class CardFilterPane extends JPanel {
 			@Override
 			public void keyTyped(KeyEvent e) {
 				if (e.getKeyChar() == '\n') {
+					searchDelay.stop();
 					filter(null);
 				}
 			}
@@ -50,10 +59,27 @@ public class CardFilterPane extends JPanel {
 			}
 		};
 
-		nameField.addKeyListener(enterButtonListener);
-		keywordField.addKeyListener(enterButtonListener);
-		typeField.addKeyListener(enterButtonListener);
-		textField.addKeyListener(enterButtonListener);
+		DocumentListener typingListener = new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				searchDelay.restart();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				searchDelay.restart();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		};
+		searchDelay.setRepeats(false);
+
+		for (SearchBox field : new SearchBox[] {nameField, keywordField, typeField, textField, statsField}) {
+			field.addKeyListener(enterButtonListener);
+			field.getDocument().addDocumentListener(typingListener);
+		}
 
 		GroupLayout.SequentialGroup manaHorizontalLayout = layout.createSequentialGroup();
 		manaHorizontalLayout.addGap(UIConstants.MARGIN);
@@ -80,6 +106,7 @@ public class CardFilterPane extends JPanel {
 										.addComponent(keywordField)
 										.addComponent(typeField)
 										.addComponent(textField)
+										.addComponent(statsField)
 								)
 								.addGap(UIConstants.MARGIN)
 				)
@@ -97,6 +124,7 @@ public class CardFilterPane extends JPanel {
 				.addComponent(keywordField)
 				.addComponent(typeField)
 				.addComponent(textField)
+				.addComponent(statsField)
 				.addGroup(layout.createParallelGroup()
 						.addComponent(searchButton)
 						.addComponent(resetButton)
@@ -117,38 +145,62 @@ public class CardFilterPane extends JPanel {
 		typeField.setText("");
 		keywordField.setText("");
 		textField.setText("");
+		statsField.setText("");
+		searchDelay.stop();
+		lastSearch = getSearchText();
 		CardTableFilter.setFilterList(null);
 	}
 
+	private List<String> getSearchText() {
+		return Arrays.asList(nameField.getText(), keywordField.getText(), typeField.getText(), textField.getText(), statsField.getText());
+	}
+
+	/**
+	 Runs the search once typing pauses. Focus changes swap the hint text in and out of the boxes, so the search is
+	 skipped when none of the text has actually changed.
+	 */
+	private void search(ActionEvent actionEvent) {
+		if (!getSearchText().equals(lastSearch)) {
+			filter(actionEvent);
+		}
+	}
+
+	/**
+	 Compiles the search boxes and selected archetypes into one query, one clause for each that's filled in.
+	 */
 	public void filter(ActionEvent actionEvent) {
-		List<Predicate<Card>> filters = new ArrayList<>(8);
-		Set<Archetype> selectedColors = new HashSet<>(5);
+		lastSearch = getSearchText();
+		StringJoiner selectedColors = new StringJoiner(",");
 		for (Map.Entry<Archetype, ImageToggleButton> colorEntry : colorButtons.entrySet()) {
 			if (colorEntry.getValue().isSelected()) {
-				selectedColors.add(colorEntry.getKey());
+				selectedColors.add(colorEntry.getKey().name());
 			}
 		}
 
-		if (!selectedColors.isEmpty()) {
-			filters.add(CardTableFilter.createArchetypeFilter(selectedColors));
+		StringBuilder query = new StringBuilder();
+		if (selectedColors.length() > 0) {
+			query.append("archetype:").append(selectedColors).append('\n');
 		}
-
-		if (!nameField.getText().isEmpty()) {
-			filters.add(CardTableFilter.createNameFilter(nameField.getText()));
-		}
-
-		if (!typeField.getText().isEmpty()) {
-			filters.add(CardTableFilter.createTypeFilter(typeField.getText()));
-		}
-
-		if (!keywordField.getText().isEmpty()) {
-			filters.add(CardTableFilter.createKeywordFilter(keywordField.getText()));
+		appendClause(query, "name", nameField.getText());
+		appendClause(query, "type", typeField.getText());
+		appendClause(query, "keywords", keywordField.getText());
+		appendClause(query, "text", textField.getText());
+		query.append(statsField.getText());
+
+		CardQuery compiled;
+		try {
+			compiled = CardQuery.compile(query.toString());
+		} catch (IllegalArgumentException e) {
+			//Searches are usually invalid part way through typing them, so keep showing the last search's results.
+			Logger.tag(LTags.USER_INPUT.tag).debug("Skipping search that couldn't be compiled: {}", e.getMessage());
+			return;
 		}
+		CardTableFilter.setFilterList(Collections.singletonList(compiled));
+	}
 
-		if (!textField.getText().isEmpty()) {
-			filters.add(CardTableFilter.createTextFilter(textField.getText()));
+	private static void appendClause(StringBuilder query, String field, String value) {
+		if (!value.isEmpty()) {
+			query.append(field).append(':').append(value).append('\n');
 		}
-
-		CardTableFilter.setFilterList(filters);
 	}
 }
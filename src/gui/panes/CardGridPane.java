@@ -0,0 +1,192 @@
+package gui.panes;
+
+import application.LTags;
+import database.card.Card;
+import database.card.CardDatabase;
+import database.image.ImgStore;
+import gui.UIConstants;
+import org.tinylog.Logger;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ Shows cards as a grid of thumbnails, either the rows currently shown in the card table or the cards in the deck. The
+ grid is a list with fixed cell sizes, so only the cells in view are ever laid out or painted. Thumbnails that aren't
+ cached yet show the card back while they load in the background, and loads for cells scrolled out of view are cancelled.
+ */
+public class CardGridPane extends JPanel {
+	private static final String[] SOURCES = {"Card List", "Deck"};
+
+	private final CardListPane cardList;
+	private final GridModel model = new GridModel();
+	private final JList<Card> grid = new JList<>(model);
+	private final JComboBox<String> sourceBox = new JComboBox<>(SOURCES);
+	//Thumbnail loads in flight, by card name. Only touched on the Swing thread.
+	private final Map<String, Future<?>> loading = new HashMap<>();
+	private List<Card> deckCards = Collections.emptyList();
+
+	public CardGridPane(CardListPane cardList) {
+		this.cardList = cardList;
+		grid.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+		grid.setVisibleRowCount(-1);
+		grid.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		grid.setFixedCellWidth(UIConstants.CARD_THUMBNAIL_SIZE.width + UIConstants.MARGIN);
+		grid.setFixedCellHeight(UIConstants.CARD_THUMBNAIL_SIZE.height + UIConstants.MARGIN);
+		grid.setCellRenderer(new Renderer());
+		grid.addListSelectionListener((e) -> {
+			Card card = grid.getSelectedValue();
+			if (!e.getValueIsAdjusting() && card != null) {
+				CardDatabase.loadAndDisplayImage(card.id);
+			}
+		});
+
+		JScrollPane scrollPane = new JScrollPane(grid);
+		scrollPane.getVerticalScrollBar().setUnitIncrement(UIConstants.CARD_THUMBNAIL_SIZE.height / 4);
+		scrollPane.getViewport().addChangeListener((e) -> cancelHiddenLoads());
+
+		sourceBox.addActionListener((e) -> refresh());
+		cardList.addViewListener(() -> {
+			if (!isShowingDeck()) {
+				refresh();
+			}
+		});
+
+		GroupLayout layout = new GroupLayout(this);
+		setLayout(layout);
+		layout.setAutoCreateGaps(true);
+		layout.setAutoCreateContainerGaps(true);
+		layout.setHorizontalGroup(layout.createParallelGroup()
+				.addComponent(sourceBox, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE)
+				.addComponent(scrollPane)
+		);
+		layout.setVerticalGroup(layout.createSequentialGroup()
+				.addComponent(sourceBox, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE)
+				.addComponent(scrollPane)
+		);
+		setPreferredSize(UIConstants.CARD_GRID_PANE_SIZE);
+	}
+
+	private boolean isShowingDeck() {
+		return sourceBox.getSelectedIndex() == 1;
+	}
+
+	/**
+	 Picks up changes to the deck, if it's being shown.
+	 */
+	public void deckChanged() {
+		if (isShowingDeck()) {
+			refresh();
+		}
+	}
+
+	private void refresh() {
+		if (isShowingDeck()) {
+			CardDatabase.requestDeckList((cards) -> {
+				deckCards = cards;
+				model.refresh();
+			});
+		} else {
+			model.refresh();
+		}
+	}
+
+	private void requestThumbnail(Card card) {
+		if (loading.containsKey(card.name)) {
+			return;
+		}
+		//The callback runs on the Swing thread after this returns, so the load is always set by then. It only removes its
+		//own entry, since a load cancelled by scrolling can finish after the card has been asked for again.
+		Future<?>[] load = new Future<?>[1];
+		load[0] = ImgStore.loadCardImage(card, () -> SwingUtilities.invokeLater(() -> {
+			loading.remove(card.name, load[0]);
+			grid.repaint();
+		}));
+		loading.put(card.name, load[0]);
+	}
+
+	private void cancelHiddenLoads() {
+		if (loading.isEmpty()) {
+			return;
+		}
+
+		Set<String> visible = new HashSet<>();
+		int first = grid.getFirstVisibleIndex();
+		int last = grid.getLastVisibleIndex();
+		for (int i = first; i >= 0 && i <= last; i++) {
+			Card card = model.getElementAt(i);
+			if (card != null) {
+				visible.add(card.name);
+			}
+		}
+
+		for (Iterator<Map.Entry<String, Future<?>>> iterator = loading.entrySet().iterator(); iterator.hasNext(); ) {
+			Map.Entry<String, Future<?>> load = iterator.next();
+			if (!visible.contains(load.getKey())) {
+				load.getValue().cancel(true);
+				iterator.remove();
+			}
+		}
+	}
+
+	private class GridModel extends AbstractListModel<Card> {
+		private int size = 0;
+
+		@Override
+		public int getSize() {
+			return size;
+		}
+
+		@Override
+		public Card getElementAt(int index) {
+			if (isShowingDeck()) {
+				return index < deckCards.size() ? deckCards.get(index) : null;
+			}
+
+			//The table can briefly be out of step with the database while a reload is being applied.
+			if (index >= cardList.getViewRowCount()) {
+				return null;
+			}
+			int cardId = cardList.getViewCardId(index);
+			return cardId < CardDatabase.getTotalCardCount() ? CardDatabase.getCard(cardId) : null;
+		}
+
+		private void refresh() {
+			int oldSize = size;
+			size = isShowingDeck() ? deckCards.size() : cardList.getViewRowCount();
+			Logger.tag(LTags.UI_UPDATES.tag).debug("Refreshing card grid with {} cards.", size);
+			if (oldSize > 0) {
+				fireIntervalRemoved(this, 0, oldSize - 1);
+			}
+			if (size > 0) {
+				fireIntervalAdded(this, 0, size - 1);
+			}
+			cancelHiddenLoads();
+		}
+	}
+
+	private class Renderer extends DefaultListCellRenderer {
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			super.getListCellRendererComponent(list, null, index, isSelected, cellHasFocus);
+			setHorizontalAlignment(CENTER);
+			setText(null);
+			Icon icon = UIConstants.DEFAULT_THUMBNAIL_ICON;
+			if (value != null) {
+				Card card = (Card) value;
+				setToolTipText(card.name);
+				ImageIcon thumbnail = ImgStore.getCachedCardImage(card, UIConstants.CARD_THUMBNAIL_SIZE);
+				if (thumbnail != null) {
+					icon = thumbnail;
+				} else {
+					requestThumbnail(card);
+				}
+			}
+			setIcon(icon);
+			return this;
+		}
+	}
+}
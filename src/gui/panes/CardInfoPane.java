@@ -3,6 +3,7 @@ package gui.panes;
 import application.LTags;
 import database.card.CardCount;
 import database.card.CardDatabase;
+import database.card.CardListDiff;
 import gui.UIConstants;
 import org.tinylog.Logger;
 
@@ -68,6 +69,20 @@ public class CardInfoPane extends JPanel {
 		}
 	}
 
+	/**
+	 Follows the selected card to its new id after a reload, or deselects it if it was removed.
+	 @param diff The changes from the reload.
+	 */
+	public void remapCard(CardListDiff diff) {
+		int newCardId = diff.mapId(cardId);
+		Logger.tag(LTags.UI_UPDATES.tag).info("Selected card #{} is now #{} after reload.", cardId, newCardId);
+		if (newCardId == -1) {
+			cardImage.setIcon(UIConstants.DEFAULT_CARD_ICON);
+			setCard(-1, CardCount.INVALID, null);
+		}
+		cardId = newCardId;
+	}
+
 	private void addToDeck(ActionEvent actionEvent) {
 		Logger.tag(LTags.USER_INPUT.tag).info("Adding card #{} to deck.", cardId);
 		CardDatabase.addToDeck(cardId, 1);
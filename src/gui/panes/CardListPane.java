@@ -3,6 +3,9 @@ package gui.panes;
 import application.LTags;
 import database.card.Card;
 import database.card.CardDatabase;
+import database.card.CardIndex;
+import database.card.CardListDiff;
+import database.image.ImgStore;
 import gui.UIConstants;
 import gui.panes.models.CardTableFilter;
 import gui.panes.models.CardTableModel;
@@ -15,14 +18,19 @@ import javax.swing.table.JTableHeader;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
 
 public class CardListPane extends JPanel {
 	private final JTable cardTable;
 	private final JProgressBar busyIndicator;
 	private CardTableSorter sorter;
 	private CardTableModel model;
-	private RowFilter<CardTableModel, Integer> cachedFilter;
+	private Function<CardIndex, BitSet> cachedFilter;
+	private final List<Runnable> viewListeners = new ArrayList<>(1);
 
 	private static final Object[][] defaultTable;
 
@@ -81,22 +89,44 @@ public class CardListPane extends JPanel {
 			int selectedIndex = cardTable.getSelectedRow();
 			if (selectedIndex >= 0 && selectedIndex < cardTable.getRowCount()) {
 				selectedIndex = cardTable.convertRowIndexToModel(selectedIndex);
-				Card card = CardDatabase.getCard(selectedIndex);
-				CardDatabase.loadAndDisplayImage(card.id);
+				//The table can briefly have more rows than the database while a reload is being applied.
+				if (selectedIndex < CardDatabase.getTotalCardCount()) {
+					Card card = CardDatabase.getCard(selectedIndex);
+					CardDatabase.loadAndDisplayImage(card.id);
+					prefetchAround(cardTable.getSelectedRow(), card);
+				}
 			}
 		});
 	}
 
+	/**
+	 Starts rendering the cards in the rows around the selection, in the order they're currently shown, nearest first.
+	 */
+	private void prefetchAround(int viewRow, Card selected) {
+		List<Card> window = new ArrayList<>(2 * UIConstants.PREFETCH_ROWS);
+		int rowCount = cardTable.getRowCount();
+		for (int distance = 1; distance <= UIConstants.PREFETCH_ROWS; distance++) {
+			for (int row : new int[] {viewRow + distance, viewRow - distance}) {
+				if (row >= 0 && row < rowCount) {
+					int modelIndex = cardTable.convertRowIndexToModel(row);
+					if (modelIndex < CardDatabase.getTotalCardCount()) {
+						window.add(CardDatabase.getCard(modelIndex));
+					}
+				}
+			}
+		}
+		ImgStore.prefetchCardImages(selected, window);
+	}
+
 	public void clearTable() {
 		cardTable.setEnabled(false);
 	}
 
 	public void initTable() {
 		model = new CardTableModel();
-		sorter = new CardTableSorter();
-		sorter.setModel(model);
+		sorter = new CardTableSorter(model);
 		if (cachedFilter != null) {
-			sorter.setRowFilter(cachedFilter);
+			sorter.setFilter(cachedFilter);
 		} else {
 			CardTableFilter.setFilterList(null);
 		}
@@ -104,6 +134,35 @@ public class CardListPane extends JPanel {
 		cardTable.setRowSorter(sorter);
 		cardTable.setModel(model);
 		cardTable.setEnabled(true);
+		sorter.addRowSorterListener((e) -> fireViewChanged());
+		fireViewChanged();
+	}
+
+	/**
+	 Adds a listener that gets called whenever the rows shown in the table, or their order, change.
+	 @param listener The listener, called on the Swing thread.
+	 */
+	public void addViewListener(Runnable listener) {
+		viewListeners.add(listener);
+	}
+
+	private void fireViewChanged() {
+		for (Runnable listener : viewListeners) {
+			listener.run();
+		}
+	}
+
+	public int getViewRowCount() {
+		return cardTable.getRowCount();
+	}
+
+	/**
+	 Returns the id of the card shown in a row of the table.
+	 @param viewRow The row, in the order currently shown.
+	 @return The card id.
+	 */
+	public int getViewCardId(int viewRow) {
+		return cardTable.convertRowIndexToModel(viewRow);
 	}
 
 	public void setBusy(boolean isBusy) {
@@ -113,21 +172,68 @@ public class CardListPane extends JPanel {
 		busyIndicator.setVisible(isBusy);
 	}
 
-	public void setFilter(RowFilter<CardTableModel, Integer> filter) {
+	public void setFilter(Function<CardIndex, BitSet> filter) {
 		if (sorter == null) {
 			cachedFilter = filter;
 		} else {
-			sorter.setRowFilter(filter);
+			sorter.setFilter(filter);
 		}
 	}
 
-	public void updateRow(int id) {
-		if (model != null) {
-			Logger.tag(LTags.UI_UPDATES.tag).debug("Updating table row for card #{}.", id);
-			model.fireTableRowsUpdated(id, id);
-		} else {
-			Logger.tag(LTags.UI_UPDATES.tag).error("Attempted to update a card row when the model has not been fully initialized.");
+	/**
+	 Redraws the rows for a set of cards, with one event for each run of consecutive ids.
+	 @param ids The ids of the cards to redraw.
+	 */
+	public void updateRows(BitSet ids) {
+		if (model == null) {
+			Logger.tag(LTags.UI_UPDATES.tag).error("Attempted to update card rows when the model has not been fully initialized.");
+			return;
+		}
+
+		int rowCount = model.getRowCount();
+		for (int first = ids.nextSetBit(0); first >= 0 && first < rowCount; first = ids.nextSetBit(first + 1)) {
+			int last = Integer.min(ids.nextClearBit(first), rowCount) - 1;
+			Logger.tag(LTags.UI_UPDATES.tag).debug("Updating table rows for cards #{} to #{}.", first, last);
+			model.fireTableRowsUpdated(first, last);
+			first = last;
+		}
+	}
+
+	/**
+	 Patches the table after a reload. Removed rows go first, from the bottom up, so each event's indices are still
+	 valid when it is fired, then changed rows, then rows added to the end.
+	 @param diff The changes from the reload.
+	 */
+	public void applyDiff(CardListDiff diff) {
+		if (model == null) {
+			Logger.tag(LTags.UI_UPDATES.tag).error("Attempted to patch the card table when the model has not been fully initialized.");
+			return;
+		}
+
+		int[] removed = diff.removedIds;
+		for (int last = removed.length - 1; last >= 0; ) {
+			int first = last;
+			while (first > 0 && removed[first - 1] == removed[first] - 1) {
+				first--;
+			}
+			model.removeRows(removed[first], removed[last]);
+			last = first - 1;
+		}
+
+		int[] changed = diff.changedIds;
+		for (int first = 0; first < changed.length; ) {
+			int last = first;
+			while (last + 1 < changed.length && changed[last + 1] == changed[last] + 1) {
+				last++;
+			}
+			model.fireTableRowsUpdated(changed[first], changed[last]);
+			first = last + 1;
+		}
+
+		if (diff.addedCount > 0) {
+			model.insertRows(diff.firstAddedId, diff.firstAddedId + diff.addedCount - 1);
 		}
+		Logger.tag(LTags.UI_UPDATES.tag).debug("Patched card table with {} removed, {} changed and {} added rows.", removed.length, changed.length, diff.addedCount);
 	}
 
 	public void updateTable() {
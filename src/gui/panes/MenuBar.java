@@ -42,6 +42,11 @@ public class MenuBar extends JMenuBar {
 		exportImage.addActionListener((e) -> exportPopup(IMG_FILTER, ".png", CardDatabase::saveDeckImage));
 		exportImage.setMnemonic('e');
 		fileMenu.add(exportImage);
+		fileMenu.addSeparator();
+		JCheckBoxMenuItem watchFiles = new JCheckBoxMenuItem("Watch For Changes");
+		watchFiles.addActionListener((e) -> CardDatabase.setWatchingFiles(watchFiles.isSelected()));
+		watchFiles.setMnemonic('w');
+		fileMenu.add(watchFiles);
 		add(fileMenu);
 
 		JMenu editMenu = new JMenu("Edit");
@@ -52,7 +57,7 @@ public class MenuBar extends JMenuBar {
 		editMenu.add(clearDeck);
 		add(editMenu);
 
-		JMenuItem viewMenu = new JMenu("View");
+		JMenu viewMenu = new JMenu("View");
 		viewMenu.setMnemonic('v');
 		JCheckBoxMenuItem trunkOnly = new JCheckBoxMenuItem("In Trunk");
 		trunkOnly.addActionListener((e) -> CardTableFilter.setViewTrunkOnly(trunkOnly.isSelected()));
@@ -66,6 +71,11 @@ public class MenuBar extends JMenuBar {
 		notDeckOnly.addActionListener(this::viewNotDeckOnly);
 		notDeckOnly.setMnemonic('n');
 		viewMenu.add(notDeckOnly);
+		viewMenu.addSeparator();
+		JMenuItem cardGrid = new JMenuItem("Card Grid");
+		cardGrid.addActionListener((e) -> Gui.showCardGrid());
+		cardGrid.setMnemonic('g');
+		viewMenu.add(cardGrid);
 		add(viewMenu);
 
 		JMenu trunkMenu = new JMenu("Trunk");
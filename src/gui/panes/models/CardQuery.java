@@ -0,0 +1,318 @@
+package gui.panes.models;
+
+import application.LTags;
+import database.card.Archetype;
+import database.card.Card;
+import database.card.CardIndex;
+import database.card.Rarity;
+import org.tinylog.Logger;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ A search compiled down to one predicate. Queries have one clause per line, either a field and what to look for, like
+ {@code name:REGEX:^the} or {@code archetype:alien,robot}, or comparisons on card stats, like {@code cost<=3 power>1}.
+ Text fields take the same REGEX:, EQUALS:, + and , syntax as the search boxes.
+
+ Clauses that the card index can answer are picked out with bit sets. The rest are tested card by card, cheapest and
+ most selective first, going by how often each one has let cards through so far. Compiled queries are cached by their
+ text, so searching again keeps what was learned about the clauses.
+ */
+public class CardQuery extends CardTableFilter.IndexedFilter {
+	private static final int CACHE_SIZE = 64;
+	//How many cards get tested between re-ordering the clauses.
+	private static final int REORDER_INTERVAL = 4096;
+	private static final Pattern COMPARISON = Pattern.compile("(\\w+)\\s*(<=|>=|!=|==|=|<|>)\\s*(-?\\d+)");
+	//The value is everything after the colon, spaces included, since the search boxes match what was typed literally.
+	private static final Pattern FIELD_CLAUSE = Pattern.compile("(?i)\\s*(name|type|keywords|text|archetype|rarity):(.*)");
+
+	private static final Map<String, CardQuery> cache = new LinkedHashMap<String, CardQuery>(CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CardQuery> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final String text;
+	private final List<CardTableFilter.IndexedFilter> indexed = new ArrayList<>(4);
+	private final FusedPredicate remainder;
+	private final FusedPredicate everything;
+
+	/**
+	 Rough cost of testing one card against each kind of clause, relative to a comparison on an int.
+	 */
+	private enum Cost {
+		COMPARISON(1),
+		STRING(4),
+		REGEX(16);
+
+		final int weight;
+
+		Cost(int weight) {
+			this.weight = weight;
+		}
+	}
+
+	private enum Stat {
+		COST((card) -> card.cost),
+		POWER((card) -> card.power.data),
+		HEALTH((card) -> card.health.data),
+		CHANNEL((card) -> card.channel.data),
+		CHARGES((card) -> card.charges.data),
+		SLOTS((card) -> card.slots.data);
+
+		final ToIntFunction<Card> value;
+
+		Stat(ToIntFunction<Card> value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 One clause, keeping count of how many cards it's been tested against and how many it let through.
+	 */
+	private static class Clause implements Predicate<Card> {
+		final Predicate<Card> filter;
+		final Cost cost;
+		final String description;
+		//Only used to order clauses, so lost updates from racing threads don't matter.
+		long tested = 0;
+		long passed = 0;
+
+		Clause(Predicate<Card> filter, Cost cost, String description) {
+			this.filter = filter;
+			this.cost = cost;
+			this.description = description;
+		}
+
+		@Override
+		public boolean test(Card card) {
+			tested++;
+			if (filter.test(card)) {
+				passed++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 Expected cost of the clause for each card it rules out. Clauses nothing is known about yet count as letting half
+		 of the cards through.
+		 */
+		double rank() {
+			double passRate = (passed + 1.0) / (tested + 2.0);
+			return cost.weight / (1 - passRate);
+		}
+	}
+
+	/**
+	 Tests clauses in order of rank, re-sorting them every so often as their pass rates change.
+	 */
+	private static class FusedPredicate implements Predicate<Card> {
+		private volatile Clause[] order;
+		private int sinceReorder = 0;
+
+		FusedPredicate(List<Clause> clauses) {
+			order = clauses.toArray(new Clause[0]);
+			reorder();
+		}
+
+		boolean isEmpty() {
+			return order.length == 0;
+		}
+
+		@Override
+		public boolean test(Card card) {
+			boolean passed = true;
+			for (Clause clause : order) {
+				if (!clause.test(card)) {
+					passed = false;
+					break;
+				}
+			}
+
+			if (++sinceReorder >= REORDER_INTERVAL) {
+				sinceReorder = 0;
+				reorder();
+			}
+			return passed;
+		}
+
+		private void reorder() {
+			Clause[] sorted = order.clone();
+			Arrays.sort(sorted, Comparator.comparingDouble(Clause::rank));
+			order = sorted;
+			StringJoiner ranks = new StringJoiner(", ");
+			for (Clause clause : sorted) {
+				ranks.add(clause.description + " (" + clause.passed + "/" + clause.tested + ")");
+			}
+			Logger.tag(LTags.USER_INPUT.tag).trace("Search clause order: {}", ranks);
+		}
+	}
+
+	private CardQuery(String text) {
+		this.text = text;
+		List<Clause> unindexed = new ArrayList<>(4);
+		List<Clause> all = new ArrayList<>(4);
+		for (String line : text.split("\n")) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+
+			Matcher field = FIELD_CLAUSE.matcher(line);
+			if (field.matches()) {
+				String name = field.group(1).toLowerCase();
+				String value = field.group(2);
+				CardTableFilter.IndexedFilter filter = createFieldFilter(name, value);
+				Cost cost = name.equals("archetype") || name.equals("rarity") ? Cost.COMPARISON : value.startsWith("REGEX:") ? Cost.REGEX : Cost.STRING;
+				Clause clause = new Clause(filter, cost, line);
+				indexed.add(filter);
+				all.add(clause);
+				if (!filter.isExact()) {
+					unindexed.add(clause);
+				}
+			} else {
+				for (Clause clause : parseComparisons(line.trim())) {
+					all.add(clause);
+					unindexed.add(clause);
+				}
+			}
+		}
+
+		remainder = new FusedPredicate(unindexed);
+		everything = new FusedPredicate(all);
+	}
+
+	/**
+	 Compiles a query, or returns the compiled query from last time the same text was searched for.
+	 @param text The query, one clause per line.
+	 @return The compiled query.
+	 @throws IllegalArgumentException If the query can't be understood, including invalid regexes.
+	 */
+	public static CardQuery compile(String text) {
+		synchronized (cache) {
+			CardQuery query = cache.get(text);
+			if (query == null) {
+				query = new CardQuery(text);
+				cache.put(text, query);
+				Logger.tag(LTags.USER_INPUT.tag).debug("Compiled search \"{}\".", text.replace('\n', ';'));
+			}
+			return query;
+		}
+	}
+
+	private static CardTableFilter.IndexedFilter createFieldFilter(String name, String value) {
+		switch (name) {
+			case "name":
+				return (CardTableFilter.IndexedFilter) CardTableFilter.createNameFilter(value);
+			case "type":
+				return (CardTableFilter.IndexedFilter) CardTableFilter.createTypeFilter(value);
+			case "keywords":
+				return (CardTableFilter.IndexedFilter) CardTableFilter.createKeywordFilter(value);
+			case "text":
+				return (CardTableFilter.IndexedFilter) CardTableFilter.createTextFilter(value);
+			case "archetype":
+				Set<Archetype> archetypes = EnumSet.noneOf(Archetype.class);
+				for (String archetype : value.split(",")) {
+					archetypes.add(Archetype.valueOf(archetype.trim().toUpperCase()));
+				}
+				return (CardTableFilter.IndexedFilter) CardTableFilter.createArchetypeFilter(archetypes);
+			case "rarity":
+				Set<Rarity> rarities = EnumSet.noneOf(Rarity.class);
+				for (String rarity : value.split(",")) {
+					rarities.add(Rarity.valueOf(rarity.trim().toUpperCase()));
+				}
+				return (CardTableFilter.IndexedFilter) CardTableFilter.createRarityFilter(rarities);
+			default:
+				throw new IllegalArgumentException("Unknown search field " + name + ".");
+		}
+	}
+
+	/**
+	 Parses comparisons like {@code cost<=3}, separated by spaces or commas. Blank stats never match.
+	 */
+	private static List<Clause> parseComparisons(String line) {
+		List<Clause> clauses = new ArrayList<>(2);
+		for (String comparison : line.split("[\\s,]+")) {
+			Matcher matcher = COMPARISON.matcher(comparison);
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException("Couldn't understand search \"" + comparison + "\".");
+			}
+
+			ToIntFunction<Card> stat = Stat.valueOf(matcher.group(1).toUpperCase()).value;
+			int operand = Integer.parseInt(matcher.group(3));
+			Predicate<Card> filter;
+			switch (matcher.group(2)) {
+				case "<":
+					filter = (card) -> {
+						int value = stat.applyAsInt(card);
+						return value != Card.BLANK_INT && value < operand;
+					};
+					break;
+				case "<=":
+					filter = (card) -> {
+						int value = stat.applyAsInt(card);
+						return value != Card.BLANK_INT && value <= operand;
+					};
+					break;
+				case ">":
+					filter = (card) -> {
+						int value = stat.applyAsInt(card);
+						return value != Card.BLANK_INT && value > operand;
+					};
+					break;
+				case ">=":
+					filter = (card) -> {
+						int value = stat.applyAsInt(card);
+						return value != Card.BLANK_INT && value >= operand;
+					};
+					break;
+				case "!=":
+					filter = (card) -> {
+						int value = stat.applyAsInt(card);
+						return value != Card.BLANK_INT && value != operand;
+					};
+					break;
+				default:
+					filter = (card) -> {
+						int value = stat.applyAsInt(card);
+						return value != Card.BLANK_INT && value == operand;
+					};
+			}
+			clauses.add(new Clause(filter, Cost.COMPARISON, comparison));
+		}
+		return clauses;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	public BitSet select(CardIndex index) {
+		BitSet selected = index.all();
+		for (CardTableFilter.IndexedFilter filter : indexed) {
+			selected.and(filter.select(index));
+		}
+		return selected;
+	}
+
+	@Override
+	public boolean isExact() {
+		return remainder.isEmpty();
+	}
+
+	@Override
+	public Predicate<Card> getRemainder() {
+		return remainder.isEmpty() ? null : remainder;
+	}
+
+	@Override
+	public boolean test(Card card) {
+		return everything.test(card);
+	}
+}
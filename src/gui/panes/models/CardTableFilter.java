@@ -1,14 +1,20 @@
 package gui.panes.models;
 
+import application.TaskScheduler;
 import database.card.Archetype;
 import database.card.Card;
 import database.card.CardDatabase;
+import database.card.CardIndex;
+import database.card.CardIndex.TextField;
+import database.card.Rarity;
 import gui.Gui;
 
-import javax.swing.*;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
@@ -18,9 +24,86 @@ public class CardTableFilter {
 	public static boolean viewDeckOnly = false;
 	public static boolean viewNotDeckOnly = false;
 	public static boolean viewTrunkOnly = false;
+	//How many rows get filtered or sorted between checks for whether the search has been cancelled.
+	static final int ROWS_BETWEEN_CANCEL_CHECKS = 1024;
+
+	/**
+	 A filter that can also pick out every matching card at once from the card index. The table filter answers these
+	 with bit sets up front, so only the cards they let through are tested against the other filters.
+	 */
+	public static abstract class IndexedFilter implements Predicate<Card> {
+		/**
+		 Returns every card the filter lets through.
+		 @param index The index for the current card database.
+		 @return A set of card ids, which the caller is free to modify.
+		 */
+		public abstract BitSet select(CardIndex index);
+
+		/**
+		 Whether select returns exactly the cards the filter lets through, rather than a superset that still needs to be
+		 tested card by card.
+		 */
+		public boolean isExact() {
+			return true;
+		}
+
+		/**
+		 Returns what still has to be tested for each card select picks out.
+		 @return The test, or null if select is exact.
+		 */
+		public Predicate<Card> getRemainder() {
+			return isExact() ? null : this;
+		}
+	}
+
+	/**
+	 Wraps a predicate with a way of narrowing down the cards it could match, so it's only tested against those.
+	 */
+	private static IndexedFilter narrowed(Predicate<Card> filter, Function<CardIndex, BitSet> candidates) {
+		return new IndexedFilter() {
+			@Override
+			public BitSet select(CardIndex index) {
+				return candidates.apply(index);
+			}
+
+			@Override
+			public boolean isExact() {
+				return false;
+			}
+
+			@Override
+			public boolean test(Card card) {
+				return filter.test(card);
+			}
+		};
+	}
 
 	public static Predicate<Card> createArchetypeFilter(Collection<Archetype> archetypes) {
-		return (card) -> archetypes.contains(card.archetype);
+		return new IndexedFilter() {
+			@Override
+			public BitSet select(CardIndex index) {
+				return index.archetypes(archetypes);
+			}
+
+			@Override
+			public boolean test(Card card) {
+				return archetypes.contains(card.archetype);
+			}
+		};
+	}
+
+	public static Predicate<Card> createRarityFilter(Collection<Rarity> rarities) {
+		return new IndexedFilter() {
+			@Override
+			public BitSet select(CardIndex index) {
+				return index.rarities(rarities);
+			}
+
+			@Override
+			public boolean test(Card card) {
+				return rarities.contains(card.rarity);
+			}
+		};
 	}
 
 	public static void setViewTrunkOnly(boolean value) {
@@ -40,67 +123,120 @@ public class CardTableFilter {
 
 	public static Predicate<Card> createNameFilter(String query) {
 		if (query.startsWith("REGEX:")) {
-			Pattern regex = Pattern.compile(query.toLowerCase().substring("REGEX:".length()));
-			return (card -> regex.matcher(card.name.toLowerCase()).find());
+			String lregex = query.toLowerCase().substring("REGEX:".length());
+			Pattern regex = Pattern.compile(lregex);
+			return narrowed(card -> regex.matcher(card.name.toLowerCase()).find(), (index) -> index.matching(TextField.NAME, lregex));
 		} else if (query.startsWith("EQUALS:")) {
 			String squery = query.substring("EQUALS:".length()).toLowerCase();
-			return (card -> card.name.equalsIgnoreCase(squery));
+			return narrowed(card -> card.name.equalsIgnoreCase(squery), (index) -> index.containing(TextField.NAME, squery));
 		} else {
 			String lquery = query.toLowerCase();
-			return (card) -> card.name.toLowerCase().contains(lquery);
+			return narrowed((card) -> containsIgnoreCase(card.name, lquery), (index) -> index.containing(TextField.NAME, lquery));
 		}
 	}
 
 	public static Predicate<Card> createTextFilter(String query) {
 		if (query.startsWith("REGEX:")) {
-			Pattern regex = Pattern.compile(query.toLowerCase().substring("REGEX:".length()));
-			return (card -> regex.matcher(card.cardText).find());
+			String lregex = query.toLowerCase().substring("REGEX:".length());
+			Pattern regex = Pattern.compile(lregex);
+			return narrowed(card -> regex.matcher(card.cardText).find(), (index) -> index.matching(TextField.TEXT, lregex));
 		} else if (query.startsWith("EQUALS:")) {
 			String squery = query.substring("EQUALS:".length()).toLowerCase();
-			return (card -> card.cardText.equals(squery));
+			return narrowed(card -> card.cardText.equals(squery), (index) -> index.containing(TextField.TEXT, squery));
 		} else {
 			String lquery = query.toLowerCase();
-			return (card) -> card.cardText.contains(lquery);
+			return narrowed((card) -> card.cardText.contains(lquery), (index) -> index.containing(TextField.TEXT, lquery));
 		}
 	}
 
 	public static Predicate<Card> createTypeFilter(String query) {
+		Predicate<String> typeMatches;
 		if (query.startsWith("REGEX:")) {
 			Pattern regex = Pattern.compile(query.toLowerCase().substring("REGEX:".length()));
-			return (card -> regex.matcher(card.type.toLowerCase()).find());
+			typeMatches = (type -> regex.matcher(type.toLowerCase()).find());
 		} else if (query.startsWith("EQUALS:")) {
 			String squery = query.substring("EQUALS:".length()).toLowerCase();
-			return (card -> card.type.equalsIgnoreCase(squery));
+			typeMatches = (type -> type.equalsIgnoreCase(squery));
 		} else {
 			String lquery = query.toLowerCase();
-			return (card) -> card.type.toLowerCase().contains(lquery);
+			typeMatches = (type) -> type.toLowerCase().contains(lquery);
 		}
+
+		//There are only a handful of distinct types, so match those and pick up their cards from the index.
+		return new IndexedFilter() {
+			@Override
+			public BitSet select(CardIndex index) {
+				return index.types(typeMatches);
+			}
+
+			@Override
+			public boolean test(Card card) {
+				return typeMatches.test(card.type);
+			}
+		};
 	}
 
 	public static Predicate<Card> createKeywordFilter(String query) {
-		String[] splitStrings = query.split("\\+");
+		String[] splitStrings = query.toLowerCase().split("\\+");
 		Collection<String[]> andGroups = new ArrayList<>(splitStrings.length);
 		for (String splitString : splitStrings) {
 			andGroups.add(splitString.split(","));
 		}
 
-		return (card) -> {
+		Predicate<Card> filter = (card) -> {
 			for (String[] group : andGroups) {
-				boolean isValid = false;
-				for (String keyword : group) {
-					if (card.keywords.stream().anyMatch((cardKeyword) -> cardKeyword.toLowerCase().contains(keyword.toLowerCase()))) {
-						isValid = true;
-						break;
-					}
-				}
-
-				if (!isValid) {
+				if (!containsAnyKeyword(card.keywords, group)) {
 					return false;
 				}
 			}
 
 			return true;
 		};
+
+		return narrowed(filter, (index) -> {
+			BitSet candidates = index.all();
+			for (String[] group : andGroups) {
+				BitSet groupCandidates = new BitSet(index.getCardCount());
+				for (String keyword : group) {
+					groupCandidates.or(index.containing(TextField.KEYWORDS, keyword));
+				}
+				candidates.and(groupCandidates);
+			}
+			return candidates;
+		});
+	}
+
+	private static boolean containsAnyKeyword(List<String> cardKeywords, String[] keywords) {
+		for (String keyword : keywords) {
+			for (String cardKeyword : cardKeywords) {
+				if (containsIgnoreCase(cardKeyword, keyword)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 Checks whether a string contains a lower case one, ignoring case, without making a lower case copy of it.
+	 */
+	private static boolean containsIgnoreCase(String string, String lowerCase) {
+		int last = string.length() - lowerCase.length();
+		for (int start = 0; start <= last; start++) {
+			if (string.regionMatches(true, start, lowerCase, 0, lowerCase.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 Re-runs the filter over the table if it depends on what's in the deck or trunk, keeping the current predicates.
+	 */
+	public static void refilterCollections() {
+		if (viewDeckOnly || viewNotDeckOnly || viewTrunkOnly) {
+			createTableFilter();
+		}
 	}
 
 	public static void setFilterList(List<Predicate<Card>> filters) {
@@ -108,38 +244,59 @@ public class CardTableFilter {
 		createTableFilter();
 	}
 
+	/**
+	 Builds the table filter, which the table sorter runs off the Swing thread. The view toggles and indexed filters are
+	 combined into one set of cards up front, and only cards in the set go on to the other filters.
+	 */
 	private static void createTableFilter() {
-		Gui.setCardFilter(new RowFilter<CardTableModel, Integer>() {
-			@Override
-			public boolean include(Entry<? extends CardTableModel, ? extends Integer> entry) {
-				Card card = CardDatabase.getCard(entry.getIdentifier());
+		boolean deckOnly = viewDeckOnly;
+		boolean notDeckOnly = viewNotDeckOnly;
+		boolean trunkOnly = viewTrunkOnly;
+		List<Predicate<Card>> filters = currentFilters == null ? Collections.emptyList() : new ArrayList<>(currentFilters);
 
-				if (viewNotDeckOnly || viewDeckOnly) {
-					int copiesInDeck = CardDatabase.getCountInDeck(card.id);
+		Gui.setCardFilter((index) -> {
+			BitSet allowed = index.all();
+			if (deckOnly) {
+				allowed.and(CardDatabase.getCardsInDeck());
+			}
+			if (notDeckOnly) {
+				allowed.andNot(CardDatabase.getCardsInDeck());
+			}
+			if (trunkOnly) {
+				allowed.and(CardDatabase.getCardsInTrunk());
+			}
 
-					if (viewDeckOnly && copiesInDeck == 0) {
-						return false;
-					} else if (viewNotDeckOnly && copiesInDeck > 0) {
-						return false;
+			List<Predicate<Card>> rowFilters = new ArrayList<>(filters.size());
+			for (Predicate<Card> filter : filters) {
+				if (filter instanceof IndexedFilter) {
+					IndexedFilter indexedFilter = (IndexedFilter) filter;
+					allowed.and(indexedFilter.select(index));
+					Predicate<Card> remainder = indexedFilter.getRemainder();
+					if (remainder != null) {
+						rowFilters.add(remainder);
 					}
+				} else {
+					rowFilters.add(filter);
 				}
+			}
 
-				if (viewTrunkOnly) {
-					if (CardDatabase.getCountInTrunk(card.id) == 0) {
-						return false;
+			if (!rowFilters.isEmpty()) {
+				int tested = 0;
+				for (int cardId = allowed.nextSetBit(0); cardId >= 0 && cardId < index.getCardCount(); cardId = allowed.nextSetBit(cardId + 1)) {
+					if (++tested % ROWS_BETWEEN_CANCEL_CHECKS == 0 && TaskScheduler.isCancelled()) {
+						return null;
 					}
-				}
 
-				if (currentFilters != null) {
-					//Test provided filters.
-					for (Predicate<Card> filter : currentFilters) {
+					Card card = index.getCard(cardId);
+					for (Predicate<Card> filter : rowFilters) {
 						if (!filter.test(card)) {
-							return false;
+							allowed.clear(cardId);
+							break;
 						}
 					}
 				}
-				return true;
 			}
+			return allowed;
 		});
 	}
 }
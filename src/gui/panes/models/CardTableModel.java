@@ -6,9 +6,29 @@ import database.card.CardDatabase;
 import javax.swing.table.AbstractTableModel;
 
 public class CardTableModel extends AbstractTableModel {
+	//Number of rows the table has been told about. Tracked separately from the database so a reload can be applied to
+	//the table one row event at a time.
+	private int rowCount = CardDatabase.getTotalCardCount();
+
 	@Override
 	public int getRowCount() {
-		return CardDatabase.getTotalCardCount();
+		return rowCount;
+	}
+
+	@Override
+	public void fireTableDataChanged() {
+		rowCount = CardDatabase.getTotalCardCount();
+		super.fireTableDataChanged();
+	}
+
+	public void removeRows(int firstRow, int lastRow) {
+		rowCount -= lastRow - firstRow + 1;
+		fireTableRowsDeleted(firstRow, lastRow);
+	}
+
+	public void insertRows(int firstRow, int lastRow) {
+		rowCount += lastRow - firstRow + 1;
+		fireTableRowsInserted(firstRow, lastRow);
 	}
 
 	@Override
@@ -1,16 +1,366 @@
 package gui.panes.models;
 
-import javax.swing.table.TableRowSorter;
-import java.util.Comparator;
+import application.LTags;
+import application.TaskScheduler;
+import application.TaskScheduler.Lane;
+import application.TaskScheduler.Task;
+import database.card.CardDatabase;
+import database.card.CardIndex;
+import org.tinylog.Logger;
+
+import javax.swing.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ Filters and sorts the card table on the search lane instead of the Swing thread. Each change to the filter or sort
+ order cancels whatever evaluation is still running and starts a new one, and the table keeps showing the last finished
+ view until the new one is swapped in whole.
+ */
+public class CardTableSorter extends RowSorter<CardTableModel> {
+	private static final int MAX_SORT_KEYS = 3;
+
+	private final CardTableModel model;
+	private List<SortKey> sortKeys = Collections.emptyList();
+	private Function<CardIndex, BitSet> filter;
+	private View view;
+	private Task<View> evaluation;
+	//Bumped for every evaluation, so one that finishes after a newer one was started is thrown away.
+	private int generation = 0;
+
+	/**
+	 The rows shown in the table, as model indices in the order they're shown, and the reverse mapping.
+	 */
+	private static class View {
+		final int[] viewToModel;
+		final int[] modelToView;
+
+		View(int[] viewToModel, int modelRowCount) {
+			this.viewToModel = viewToModel;
+			modelToView = new int[modelRowCount];
+			Arrays.fill(modelToView, -1);
+			for (int i = 0; i < viewToModel.length; i++) {
+				modelToView[viewToModel[i]] = i;
+			}
+		}
+
+		static View unsorted(int modelRowCount) {
+			int[] rows = new int[modelRowCount];
+			for (int i = 0; i < modelRowCount; i++) {
+				rows[i] = i;
+			}
+			return new View(rows, modelRowCount);
+		}
+	}
+
+	public CardTableSorter(CardTableModel model) {
+		this.model = model;
+		view = View.unsorted(model.getRowCount());
+	}
+
+	/**
+	 Sets which cards are shown and re-evaluates the view.
+	 @param filter Returns the ids of the cards to show, or null if the evaluation was cancelled part way. Called on the
+	               search lane. A null filter shows every card.
+	 */
+	public void setFilter(Function<CardIndex, BitSet> filter) {
+		this.filter = filter;
+		evaluate();
+	}
+
+	@Override
+	public CardTableModel getModel() {
+		return model;
+	}
+
+	@Override
+	public void toggleSortOrder(int column) {
+		List<SortKey> keys = new ArrayList<>(sortKeys);
+		int existing = -1;
+		for (int i = 0; i < keys.size(); i++) {
+			if (keys.get(i).getColumn() == column) {
+				existing = i;
+				break;
+			}
+		}
+
+		if (existing == 0) {
+			SortOrder order = keys.get(0).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+			keys.set(0, new SortKey(column, order));
+		} else {
+			if (existing > 0) {
+				keys.remove(existing);
+			}
+			keys.add(0, new SortKey(column, SortOrder.ASCENDING));
+		}
+
+		if (keys.size() > MAX_SORT_KEYS) {
+			keys = keys.subList(0, MAX_SORT_KEYS);
+		}
+		setSortKeys(keys);
+	}
+
+	@Override
+	public int convertRowIndexToModel(int index) {
+		if (index < 0 || index >= view.viewToModel.length) {
+			throw new IndexOutOfBoundsException("Invalid view index " + index + ".");
+		}
+		return view.viewToModel[index];
+	}
+
+	@Override
+	public int convertRowIndexToView(int index) {
+		if (index < 0 || index >= model.getRowCount()) {
+			throw new IndexOutOfBoundsException("Invalid model index " + index + ".");
+		}
+		return index < view.modelToView.length ? view.modelToView[index] : -1;
+	}
+
+	@Override
+	public void setSortKeys(List<? extends SortKey> keys) {
+		List<SortKey> newKeys = keys == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(keys));
+		if (!newKeys.equals(sortKeys)) {
+			sortKeys = newKeys;
+			fireSortOrderChanged();
+			evaluate();
+		}
+	}
+
+	@Override
+	public List<? extends SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	@Override
+	public int getViewRowCount() {
+		return view.viewToModel.length;
+	}
 
-public class CardTableSorter extends TableRowSorter<CardTableModel> {
 	@Override
-	public Comparator<?> getComparator(int column) {
-		return (a, b) -> ((Comparable) a).compareTo(b);
+	public int getModelRowCount() {
+		return model.getRowCount();
 	}
 
 	@Override
-	protected boolean useToString(int column) {
-		return false;
+	public void modelStructureChanged() {
+		allRowsChanged();
+	}
+
+	/**
+	 Keeps the rows that are still in the model, in the same order, until the new view is ready.
+	 */
+	@Override
+	public void allRowsChanged() {
+		int rowCount = model.getRowCount();
+		int[] kept = Arrays.stream(view.viewToModel).filter((row) -> row < rowCount).toArray();
+		publish(new View(kept, rowCount));
+		evaluate();
+	}
+
+	/**
+	 Shifts the rows after the inserted ones down. The new rows aren't shown until the new view is ready.
+	 */
+	@Override
+	public void rowsInserted(int firstRow, int endRow) {
+		checkRange(firstRow, endRow);
+		int count = endRow - firstRow + 1;
+		int[] shifted = view.viewToModel.clone();
+		for (int i = 0; i < shifted.length; i++) {
+			if (shifted[i] >= firstRow) {
+				shifted[i] += count;
+			}
+		}
+		publish(new View(shifted, model.getRowCount()));
+		evaluate();
+	}
+
+	@Override
+	public void rowsDeleted(int firstRow, int endRow) {
+		if (firstRow < 0 || endRow < firstRow) {
+			throw new IndexOutOfBoundsException("Invalid deleted rows " + firstRow + " to " + endRow + ".");
+		}
+		int count = endRow - firstRow + 1;
+		int[] kept = Arrays.stream(view.viewToModel)
+				.filter((row) -> row < firstRow || row > endRow)
+				.map((row) -> row > endRow ? row - count : row)
+				.toArray();
+		publish(new View(kept, model.getRowCount()));
+		evaluate();
+	}
+
+	//Like TableRowSorter, updated rows aren't re-sorted or re-filtered. Anything that changes which cards are shown
+	//sets a new filter instead.
+	@Override
+	public void rowsUpdated(int firstRow, int endRow) {
+		checkRange(firstRow, endRow);
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow, int column) {
+		checkRange(firstRow, endRow);
+	}
+
+	private void checkRange(int firstRow, int endRow) {
+		if (firstRow < 0 || endRow < firstRow || endRow >= model.getRowCount()) {
+			throw new IndexOutOfBoundsException("Invalid rows " + firstRow + " to " + endRow + ".");
+		}
+	}
+
+	private void publish(View next) {
+		int[] previous = view.viewToModel;
+		view = next;
+		fireRowSorterChanged(previous);
+	}
+
+	/**
+	 Starts working out the view for the current filter and sort keys, cancelling the last evaluation if it's still
+	 going. The result is swapped in on the Swing thread, as long as nothing has changed since it was started.
+	 */
+	private void evaluate() {
+		if (evaluation != null) {
+			evaluation.cancel(true);
+		}
+
+		int started = ++generation;
+		Function<CardIndex, BitSet> currentFilter = filter;
+		List<SortKey> currentKeys = sortKeys;
+		int rowCount = model.getRowCount();
+		evaluation = TaskScheduler.submit(new Task<View>(Lane.SEARCH, TaskScheduler.PRIORITY_NORMAL, () -> {
+			return buildView(CardDatabase.getIndex(), currentFilter, currentKeys, rowCount);
+		}) {
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					return;
+				}
+
+				View next;
+				try {
+					next = get();
+				} catch (InterruptedException | ExecutionException e) {
+					Logger.tag(LTags.UI_UPDATES.tag).error(e, "Failed to filter and sort the card table.");
+					return;
+				}
+
+				if (next != null) {
+					SwingUtilities.invokeLater(() -> {
+						//The model can change shape after the evaluation started, in which case a newer one is coming.
+						if (started == generation && next.modelToView.length == model.getRowCount()) {
+							evaluation = null;
+							publish(next);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 Filters and sorts the cards. Runs on the search lane.
+	 @return The view, or null if the evaluation was cancelled before it finished.
+	 */
+	private static View buildView(CardIndex index, Function<CardIndex, BitSet> filter, List<SortKey> keys, int rowCount) {
+		long startTime = System.nanoTime();
+		//Rows past the end of the index belong to a reload that hasn't finished being applied, and get a new view then.
+		int cardCount = Integer.min(rowCount, index.getCardCount());
+		BitSet shown;
+		if (filter == null) {
+			shown = new BitSet(cardCount);
+			shown.set(0, cardCount);
+		} else {
+			shown = filter.apply(index);
+			if (shown == null) {
+				return null;
+			}
+			shown.clear(cardCount, Integer.max(cardCount, shown.length()));
+		}
+
+		int[] rows = new int[shown.cardinality()];
+		for (int i = 0, id = shown.nextSetBit(0); id >= 0; i++, id = shown.nextSetBit(id + 1)) {
+			rows[i] = id;
+		}
+
+		if (!sort(rows, index, keys)) {
+			return null;
+		}
+		Logger.tag(LTags.UI_UPDATES.tag).debug("Filtered and sorted {} of {} cards in {}us.", rows.length, cardCount, (System.nanoTime() - startTime) / 1000);
+		return new View(rows, rowCount);
+	}
+
+	/**
+	 Sorts model indices by the sort keys. Ties keep the order they're in, so rows that compare equal stay in model
+	 order, the same as TableRowSorter.
+	 @return False if the evaluation was cancelled part way.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static boolean sort(int[] rows, CardIndex index, List<SortKey> keys) {
+		List<Comparable[]> columns = new ArrayList<>(keys.size());
+		List<Boolean> descending = new ArrayList<>(keys.size());
+		for (SortKey key : keys) {
+			if (key.getSortOrder() == SortOrder.UNSORTED) {
+				continue;
+			}
+			Comparable[] values = new Comparable[rows.length];
+			for (int i = 0; i < rows.length; i++) {
+				if (i % CardTableFilter.ROWS_BETWEEN_CANCEL_CHECKS == 0 && TaskScheduler.isCancelled()) {
+					return false;
+				}
+				values[i] = index.getCard(rows[i]).get(key.getColumn());
+			}
+			columns.add(values);
+			descending.add(key.getSortOrder() == SortOrder.DESCENDING);
+		}
+		if (columns.isEmpty()) {
+			return true;
+		}
+
+		//Merge sort positions in the row array, bottom up, so values are looked up by position and it can stop between passes.
+		int[] order = new int[rows.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		int[] buffer = new int[rows.length];
+		for (int width = 1; width < order.length; width *= 2) {
+			if (TaskScheduler.isCancelled()) {
+				return false;
+			}
+			for (int low = 0; low < order.length - width; low += 2 * width) {
+				int mid = low + width;
+				int high = Integer.min(low + 2 * width, order.length);
+				int left = low;
+				int right = mid;
+				int out = low;
+				while (left < mid && right < high) {
+					buffer[out++] = compare(columns, descending, order[right], order[left]) < 0 ? order[right++] : order[left++];
+				}
+				while (left < mid) {
+					buffer[out++] = order[left++];
+				}
+				while (right < high) {
+					buffer[out++] = order[right++];
+				}
+				System.arraycopy(buffer, low, order, low, high - low);
+			}
+		}
+
+		int[] sorted = new int[rows.length];
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = rows[order[i]];
+		}
+		System.arraycopy(sorted, 0, rows, 0, rows.length);
+		return true;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static int compare(List<Comparable[]> columns, List<Boolean> descending, int a, int b) {
+		for (int i = 0; i < columns.size(); i++) {
+			Comparable[] values = columns.get(i);
+			int result = values[a].compareTo(values[b]);
+			if (result != 0) {
+				return descending.get(i) ? -result : result;
+			}
+		}
+		return 0;
 	}
 }